@@ -0,0 +1,92 @@
+package com.jambit.hlerchl.jambel;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The non-blocking counterpart of {@link Jambel}.
+ * <p>
+ * Each method does the same as the equally named method of {@link Jambel}
+ * but returns immediately. The returned future completes when the jambel
+ * answered; it completes exceptionally with a
+ * {@link com.jambit.hlerchl.jambel.exceptions.JambelException} in case the
+ * jambel couldn't be reached or behaved unexpectedly.
+ * <p>
+ * Commands for the same jambel are executed in the order they were issued.
+ * Instances are created by {@link JambelFactory#buildAsync}.
+ */
+public interface AsyncJambel {
+    /**
+     * Reset all three lights.
+     *
+     * @see Jambel#reset()
+     * @return a future which completes when the jambel acknowledged the command
+     */
+    CompletableFuture<Void> reset();
+
+    /**
+     * Fetch the version string from the jambel.
+     *
+     * @see Jambel#version()
+     * @return a future which completes with the version string returned by the jambel
+     */
+    CompletableFuture<String> version();
+
+    /**
+     * Set defaults for the blink times (duration of "on" and "off" phases).
+     *
+     * @see Jambel#setDefaultBlinkTimes(int, int)
+     * @param msecOn milliseconds to keep the light on
+     * @param msecOff milliseconds to keep the light off
+     * @return a future which completes when the jambel acknowledged the command
+     */
+    CompletableFuture<Void> setDefaultBlinkTimes(int msecOn, int msecOff);
+
+    /**
+     * Fetch the current status of the three lights.
+     *
+     * @see Jambel#status()
+     * @return a future which completes with the current status of the lights
+     */
+    CompletableFuture<Jambel.Status> status();
+
+    /**
+     * Test connectivity to the jambel.
+     *
+     * @see Jambel#testConnection()
+     * @return a future which completes when the jambel answered
+     */
+    CompletableFuture<Void> testConnection();
+
+    /**
+     * Access the control panel of the green light.
+     *
+     * @return a class instance to control the green light
+     */
+    AsyncJambelModule green();
+
+    /**
+     * Access the control panel of the yellow light.
+     *
+     * @return a class instance to control the yellow light
+     */
+    AsyncJambelModule yellow();
+
+    /**
+     * Access the control panel of the red light.
+     *
+     * @return a class instance to control the red light
+     */
+    AsyncJambelModule red();
+
+    /**
+     * Set all three lights atomically with a single call.
+     *
+     * @see Jambel#setAllLights(Jambel.LightStatus, Jambel.LightStatus, Jambel.LightStatus)
+     * @param red the new light mode for red
+     * @param yellow the new light mode for yellow
+     * @param green the new light mode for green
+     * @return a future which completes when the jambel acknowledged the command
+     */
+    CompletableFuture<Void> setAllLights(
+        Jambel.LightStatus red, Jambel.LightStatus yellow, Jambel.LightStatus green);
+}
@@ -0,0 +1,83 @@
+package com.jambit.hlerchl.jambel;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The non-blocking counterpart of {@link JambelModule}.
+ * <p>
+ * Each method does the same as the equally named method of {@link JambelModule}
+ * but returns a future which completes when the jambel acknowledged the command.
+ * <p>
+ * @see AsyncJambel
+ */
+public interface AsyncJambelModule {
+    /**
+     * Turns the light on.
+     *
+     * @see JambelModule#on()
+     * @return a future which completes when the jambel acknowledged the command
+     */
+    CompletableFuture<Void> on();
+
+    /**
+     * Turns the light for x milliseconds on (and then off again).
+     *
+     * @see JambelModule#on(int)
+     * @param milliSeconds how long the light should stay on
+     * @return a future which completes when the jambel acknowledged the command
+     */
+    CompletableFuture<Void> on(int milliSeconds);
+
+    /**
+     * Turns the light off.
+     *
+     * @see JambelModule#off()
+     * @return a future which completes when the jambel acknowledged the command
+     */
+    CompletableFuture<Void> off();
+
+    /**
+     * Switches the light into blink mode.
+     *
+     * @see JambelModule#blink()
+     * @return a future which completes when the jambel acknowledged the command
+     */
+    CompletableFuture<Void> blink();
+
+    /**
+     * Switches the light into "inverse blink mode".
+     *
+     * @see JambelModule#blinkInverse()
+     * @return a future which completes when the jambel acknowledged the command
+     */
+    CompletableFuture<Void> blinkInverse();
+
+    /**
+     * Switches the light into flash mode.
+     *
+     * @see JambelModule#flash()
+     * @return a future which completes when the jambel acknowledged the command
+     */
+    CompletableFuture<Void> flash();
+
+    /**
+     * Switches the light into a given mode.
+     *
+     * @see JambelModule#setMode(Jambel.LightStatus)
+     * @param mode the new light mode
+     * @return a future which completes when the jambel acknowledged the command
+     */
+    CompletableFuture<Void> setMode(Jambel.LightStatus mode);
+
+    /**
+     * Set blink timings specific to this light.
+     *
+     * @see JambelModule#setBlinkTimes(int, int)
+     * @param msecOn time in milliseconds how long a blinking light will
+     *               be turned <b>on</b>
+     * @param msecOff time in milliseconds how long a blinking light will
+     *                be turned <b>off</b>
+     * @return a future which completes when the jambel acknowledged the command
+     */
+    CompletableFuture<Void> setBlinkTimes(int msecOn, int msecOff);
+}
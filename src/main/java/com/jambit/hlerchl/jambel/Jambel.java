@@ -137,14 +137,64 @@ public interface Jambel {
     void setAllLights(LightStatus red, LightStatus yellow, LightStatus green)
         throws JambelException;
 
+    /**
+     * Tell which physical jambel this instance talks to.
+     * <p>
+     * Several instances (e.g. a wrapper and the jambel it wraps) may control the
+     * same device; they all return the same endpoint.
+     *
+     * @return the endpoint of the jambel as {@code host:port} or {@code null}
+     *      if it isn't known
+     */
+    default String getEndpoint() {
+        return null;
+    }
+
     /**
      * A pojo which contains the current status of the three lights
+     * <p>
+     * There is a shared instance for each of the 125 combinations (see
+     * {@link #of}); {@link #status()} only returns those.
      */
     @Value
     class Status {
+        private static final int NUMBER_OF_MODES = LightStatus.values().length;
+        private static final Status[] CANONICAL = createCanonicalInstances();
+
         LightStatus red;
         LightStatus yellow;
         LightStatus green;
+
+        /**
+         * Get the shared instance for the given modes.
+         * <p>
+         * Two statuses taken from here are equal if and only if they are the same
+         * instance.
+         *
+         * @param red the mode of the red light
+         * @param yellow the mode of the yellow light
+         * @param green the mode of the green light
+         * @return the canonical status for the given modes
+         */
+        public static Status of(LightStatus red, LightStatus yellow, LightStatus green) {
+            return CANONICAL[(red.ordinal() * NUMBER_OF_MODES + yellow.ordinal())
+                * NUMBER_OF_MODES + green.ordinal()];
+        }
+
+        private static Status[] createCanonicalInstances() {
+            final LightStatus[] modes = LightStatus.values();
+            final Status[] instances =
+                new Status[NUMBER_OF_MODES * NUMBER_OF_MODES * NUMBER_OF_MODES];
+            int index = 0;
+            for (LightStatus red : modes) {
+                for (LightStatus yellow : modes) {
+                    for (LightStatus green : modes) {
+                        instances[index++] = new Status(red, yellow, green);
+                    }
+                }
+            }
+            return instances;
+        }
     }
 
     /**
@@ -1,9 +1,13 @@
 package com.jambit.hlerchl.jambel;
 
+import com.jambit.hlerchl.jambel.entity.AsyncRawJambel;
 import com.jambit.hlerchl.jambel.entity.JambelCommandCompiler;
 import com.jambit.hlerchl.jambel.entity.JambelGreenOnTop;
 import com.jambit.hlerchl.jambel.entity.JambelRedOnTop;
 import com.jambit.hlerchl.jambel.exceptions.JambelCompileException;
+import com.jambit.hlerchl.jambel.link.JambelTelnetLink;
+
+import java.util.concurrent.Executor;
 
 /**
  * A factory class with static methods to create {@link Jambel} instances.
@@ -85,6 +89,54 @@ public class JambelFactory {
         }
     }
 
+    /**
+     * Create a new {@link AsyncJambel} instance which runs on a default executor.
+     * <p>
+     * For a detailed description see {@link #buildAsync(String, int, boolean, Executor)}.
+     *
+     * @see JambelFactory#buildAsync(String, int, boolean, Executor)
+     * @param hostAddress network host address or name of the jambel
+     * @param port port number of the jambel (see {@link JambelFactory#DEFAULT_PORT}).
+     * @param redOnTop does this jambel have the red light on the top?
+     * @return an {@link AsyncJambel} instance which can be used to control the jambel
+     */
+    public static AsyncJambel buildAsync(String hostAddress, int port, boolean redOnTop) {
+        return new AsyncRawJambel(buildWithoutConnectRetries(hostAddress, port, redOnTop));
+    }
+
+    /**
+     * Create a new {@link AsyncJambel} instance.
+     * <p>
+     * The returned instance behaves like the one returned by
+     * {@link #build(String, int, boolean)} but none of its methods blocks. The
+     * (blocking) network calls are done by threads of the given executor; commands
+     * to the same jambel are executed one after the other. Failed connects are
+     * retried like in the blocking version but the delay between two attempts
+     * is handled by a timer so the executor's threads are not put to sleep.
+     *
+     * @see JambelFactory#buildAsync(String, int, boolean)
+     * @param hostAddress network host address or name of the jambel
+     * @param port port number of the jambel (see {@link JambelFactory#DEFAULT_PORT}).
+     * @param redOnTop does this jambel have the red light on the top?
+     * @param executor the executor which runs the network calls
+     * @return an {@link AsyncJambel} instance which can be used to control the jambel
+     */
+    public static AsyncJambel buildAsync(String hostAddress, int port, boolean redOnTop,
+                                         Executor executor) {
+        return new AsyncRawJambel(buildWithoutConnectRetries(hostAddress, port, redOnTop), executor);
+    }
+
+    private static Jambel buildWithoutConnectRetries(String hostAddress, int port, boolean redOnTop) {
+        final JambelTelnetLink link = new JambelTelnetLink(hostAddress, port);
+        // the async jambel schedules retries on its own (instead of sleeping in the link)
+        link.setNumberOfConnectRetries(0);
+        if (redOnTop) {
+            return new JambelRedOnTop(link);
+        } else {
+            return new JambelGreenOnTop(link);
+        }
+    }
+
     /**
      * Compile a jambel command string to a closure.
      * <p>
@@ -0,0 +1,224 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.AsyncJambel;
+import com.jambit.hlerchl.jambel.AsyncJambelModule;
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.JambelCommand;
+import com.jambit.hlerchl.jambel.JambelModule;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import com.jambit.hlerchl.jambel.link.RetryPolicy;
+import com.jambit.hlerchl.jambel.link.RetrySettings;
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the blocking calls of a {@link Jambel} on an executor.
+ * <p>
+ * Calls are chained so that at most one call per jambel occupies a thread of
+ * the executor. Failed calls are retried according to the {@link RetrySettings};
+ * the delay between two attempts is waited for by a timer (and not by sleeping
+ * in a pooled thread). This is the only layer which retries: the link of the
+ * wrapped jambel must not retry on its own (the jambels built by
+ * {@link com.jambit.hlerchl.jambel.JambelFactory#buildAsync} don't). Otherwise
+ * each retry of this layer runs into the retries of the link again.
+ */
+public class AsyncRawJambel implements AsyncJambel {
+    private final Jambel jambel;
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+    private final AsyncModule redModule;
+    private final AsyncModule yellowModule;
+    private final AsyncModule greenModule;
+    private CompletableFuture<?> lastOperation = CompletableFuture.completedFuture(null);
+
+    @Getter
+    private final RetrySettings retrySettings = new RetrySettings();
+
+    public AsyncRawJambel(Jambel jambel, Executor executor, ScheduledExecutorService timer) {
+        this.jambel = jambel;
+        this.executor = executor;
+        this.timer = timer;
+        this.redModule = new AsyncModule(jambel.red());
+        this.yellowModule = new AsyncModule(jambel.yellow());
+        this.greenModule = new AsyncModule(jambel.green());
+    }
+
+    public AsyncRawJambel(Jambel jambel, Executor executor) {
+        this(jambel, executor, JambelExecutors.defaultTimer());
+    }
+
+    public AsyncRawJambel(Jambel jambel) {
+        this(jambel, JambelExecutors.defaultExecutor(), JambelExecutors.defaultTimer());
+    }
+
+    /**
+     * Retry failed calls up to the given number of times with a fixed delay.
+     * <p>
+     * Use {@code getRetrySettings()} for other retry policies.
+     *
+     * @param numberOfConnectRetries how often to retry at most
+     */
+    public void setNumberOfConnectRetries(int numberOfConnectRetries) {
+        retrySettings.setNumberOfRetries(numberOfConnectRetries);
+    }
+
+    /**
+     * Retry failed calls after a fixed delay.
+     * <p>
+     * Use {@code getRetrySettings()} for other retry policies.
+     *
+     * @param msecUntilRetry the delay before each retry in milliseconds
+     */
+    public void setMsecUntilRetry(int msecUntilRetry) {
+        retrySettings.setMsecUntilRetry(msecUntilRetry);
+    }
+
+    @Override
+    public CompletableFuture<Void> reset() {
+        return submitCommand(jambel::reset);
+    }
+
+    @Override
+    public CompletableFuture<String> version() {
+        return submit(RetryPolicy.CommandClass.READ, jambel::version);
+    }
+
+    @Override
+    public CompletableFuture<Void> setDefaultBlinkTimes(int msecOn, int msecOff) {
+        return submitCommand(() -> jambel.setDefaultBlinkTimes(msecOn, msecOff));
+    }
+
+    @Override
+    public CompletableFuture<Jambel.Status> status() {
+        return submit(RetryPolicy.CommandClass.READ, jambel::status);
+    }
+
+    @Override
+    public CompletableFuture<Void> testConnection() {
+        return submit(RetryPolicy.CommandClass.READ, () -> {
+            jambel.testConnection();
+            return null;
+        });
+    }
+
+    @Override
+    public AsyncJambelModule green() {
+        return greenModule;
+    }
+
+    @Override
+    public AsyncJambelModule yellow() {
+        return yellowModule;
+    }
+
+    @Override
+    public AsyncJambelModule red() {
+        return redModule;
+    }
+
+    @Override
+    public CompletableFuture<Void> setAllLights(
+        Jambel.LightStatus red, Jambel.LightStatus yellow, Jambel.LightStatus green) {
+        return submitCommand(() -> jambel.setAllLights(red, yellow, green));
+    }
+
+    private CompletableFuture<Void> submitCommand(JambelCommand command) {
+        return submit(RetryPolicy.CommandClass.WRITE, () -> {
+            command.execute();
+            return null;
+        });
+    }
+
+    private synchronized <T> CompletableFuture<T> submit(RetryPolicy.CommandClass commandClass,
+                                                         Call<T> call) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final CompletableFuture<?> previous = lastOperation;
+        lastOperation = result;
+        retrySettings.recordRequest();
+        previous.whenComplete((ignoredValue, ignoredError) ->
+            attempt(commandClass, call, result, 1, 0));
+        return result;
+    }
+
+    private <T> void attempt(RetryPolicy.CommandClass commandClass, Call<T> call,
+                             CompletableFuture<T> result, int retryNr, long previousDelayMsec) {
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(call.run());
+                } catch (JambelException e) {
+                    final long delayMsec =
+                        retrySettings.nextDelay(commandClass, e, retryNr, previousDelayMsec);
+                    if (delayMsec >= 0) {
+                        timer.schedule(
+                            () -> attempt(commandClass, call, result, retryNr + 1, delayMsec),
+                            delayMsec, TimeUnit.MILLISECONDS);
+                    } else {
+                        result.completeExceptionally(e);
+                    }
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private interface Call<T> {
+        T run() throws JambelException;
+    }
+
+    private class AsyncModule implements AsyncJambelModule {
+        private final JambelModule module;
+
+        AsyncModule(JambelModule module) {
+            this.module = module;
+        }
+
+        @Override
+        public CompletableFuture<Void> on() {
+            return submitCommand(module::on);
+        }
+
+        @Override
+        public CompletableFuture<Void> on(int milliSeconds) {
+            return submitCommand(() -> module.on(milliSeconds));
+        }
+
+        @Override
+        public CompletableFuture<Void> off() {
+            return submitCommand(module::off);
+        }
+
+        @Override
+        public CompletableFuture<Void> blink() {
+            return submitCommand(module::blink);
+        }
+
+        @Override
+        public CompletableFuture<Void> blinkInverse() {
+            return submitCommand(module::blinkInverse);
+        }
+
+        @Override
+        public CompletableFuture<Void> flash() {
+            return submitCommand(module::flash);
+        }
+
+        @Override
+        public CompletableFuture<Void> setMode(Jambel.LightStatus mode) {
+            return submitCommand(() -> module.setMode(mode));
+        }
+
+        @Override
+        public CompletableFuture<Void> setBlinkTimes(int msecOn, int msecOff) {
+            return submitCommand(() -> module.setBlinkTimes(msecOn, msecOff));
+        }
+    }
+}
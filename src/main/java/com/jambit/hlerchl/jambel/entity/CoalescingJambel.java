@@ -0,0 +1,327 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.JambelModule;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link Jambel} which merges mode changes of several lights into a single command.
+ * <p>
+ * Mode changes (on, off, blink, ...) are collected for a short time window. When
+ * the window closes, they are sent as one {@code set_all} command. This avoids a
+ * burst of connections when several threads switch different lights at the same
+ * time. If only some of the lights were changed and the modes of the others are
+ * unknown (see {@link RawJambel#setShadowStateEnabled}), the changes are sent as
+ * a {@link RawJambel#batch() batch} via one connection instead.
+ * <p>
+ * All other commands are passed through after the pending mode changes were sent.
+ */
+@Slf4j
+public class CoalescingJambel implements Jambel {
+    private static final int RED = 0;
+    private static final int YELLOW = 1;
+    private static final int GREEN = 2;
+
+    private final RawJambel jambel;
+    private final int windowMsec;
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+    private final CoalescingModule redModule;
+    private final CoalescingModule yellowModule;
+    private final CoalescingModule greenModule;
+    // held while sending; not a monitor for the same reason as in RawJambel
+    private final Lock flushLock = new ReentrantLock();
+
+    // guarded by this
+    private LightStatus[] pendingModes = new LightStatus[3];
+    private List<CompletableFuture<Void>> pendingCallers = new ArrayList<>();
+    private boolean flushScheduled = false;
+
+    public CoalescingJambel(RawJambel jambel, int windowMsec, Executor executor,
+                            ScheduledExecutorService timer) {
+        this.jambel = jambel;
+        this.windowMsec = windowMsec;
+        this.executor = executor;
+        this.timer = timer;
+        this.redModule = new CoalescingModule(jambel.red(), RED);
+        this.yellowModule = new CoalescingModule(jambel.yellow(), YELLOW);
+        this.greenModule = new CoalescingModule(jambel.green(), GREEN);
+    }
+
+    public CoalescingJambel(RawJambel jambel, int windowMsec) {
+        this(jambel, windowMsec, JambelExecutors.defaultExecutor(), JambelExecutors.defaultTimer());
+    }
+
+    /**
+     * Queue a mode change for one light without waiting for it.
+     *
+     * @param module the light to change (one of the modules of this jambel)
+     * @param mode the new mode of the light
+     * @return a future which completes when the jambel acknowledged the merged command
+     */
+    public CompletableFuture<Void> submitMode(JambelModule module, LightStatus mode) {
+        final CompletableFuture<Void> caller = new CompletableFuture<>();
+        final boolean scheduleFlush;
+        synchronized (this) {
+            pendingModes[coalescingModule(module).index] = mode;
+            pendingCallers.add(caller);
+            scheduleFlush = !flushScheduled;
+            flushScheduled = true;
+        }
+
+        if (scheduleFlush) {
+            try {
+                timer.schedule(this::startFlush, windowMsec, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                failPending("Timer rejected the flush of merged mode changes");
+            }
+        }
+        return caller;
+    }
+
+    /**
+     * Send all pending mode changes now.
+     *
+     * @throws JambelException thrown in case the jambel couldn't be reached
+     *      or behaved unexpectedly
+     */
+    public void flush() throws JambelException {
+        flushLock.lock();
+        try {
+            final LightStatus[] modes;
+            final List<CompletableFuture<Void>> callers;
+            synchronized (this) {
+                modes = pendingModes;
+                callers = pendingCallers;
+                pendingModes = new LightStatus[3];
+                pendingCallers = new ArrayList<>();
+                flushScheduled = false;
+            }
+
+            if (callers.isEmpty()) {
+                return;
+            }
+
+            try {
+                sendModes(modes);
+                callers.forEach(caller -> caller.complete(null));
+            } catch (JambelException | RuntimeException e) {
+                callers.forEach(caller -> caller.completeExceptionally(e));
+                throw e;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void startFlush() {
+        try {
+            executor.execute(this::flushInBackground);
+        } catch (RejectedExecutionException e) {
+            // sending blocks, so it must not run on the timer; the callers must not wait forever
+            failPending("Executor rejected the flush of merged mode changes");
+        }
+    }
+
+    /**
+     * Fail the pending mode changes without sending them.
+     */
+    private void failPending(String reason) {
+        final List<CompletableFuture<Void>> callers;
+        synchronized (this) {
+            callers = pendingCallers;
+            pendingModes = new LightStatus[3];
+            pendingCallers = new ArrayList<>();
+            flushScheduled = false;
+        }
+        log.warn("{}; failing {} pending mode changes", reason, callers.size());
+        final JambelException failure = new JambelException(reason);
+        callers.forEach(caller -> caller.completeExceptionally(failure));
+    }
+
+    private void flushInBackground() {
+        try {
+            flush();
+        } catch (JambelException | RuntimeException e) {
+            // already handed over to the waiting callers
+            log.debug("Sending merged mode changes failed: {}", e.getMessage());
+        }
+    }
+
+    private void sendModes(LightStatus[] modes) throws JambelException {
+        final LightStatus red = pendingOrKnownMode(modes, RED, jambel.red());
+        final LightStatus yellow = pendingOrKnownMode(modes, YELLOW, jambel.yellow());
+        final LightStatus green = pendingOrKnownMode(modes, GREEN, jambel.green());
+
+        if ((red != null) && (yellow != null) && (green != null)) {
+            jambel.setAllLights(red, yellow, green);
+            return;
+        }
+
+        log.debug("Modes of unchanged lights are unknown; sending single commands");
+        final RawJambel.Batch batch = jambel.batch();
+        if (modes[RED] != null) {
+            batch.setMode(jambel.red(), modes[RED]);
+        }
+        if (modes[YELLOW] != null) {
+            batch.setMode(jambel.yellow(), modes[YELLOW]);
+        }
+        if (modes[GREEN] != null) {
+            batch.setMode(jambel.green(), modes[GREEN]);
+        }
+        batch.execute();
+    }
+
+    private LightStatus pendingOrKnownMode(LightStatus[] modes, int index, JambelModule module) {
+        return (modes[index] != null) ? modes[index] : jambel.getShadowMode(module);
+    }
+
+    @Override
+    public void reset() throws JambelException {
+        flush();
+        jambel.reset();
+    }
+
+    @Override
+    public String version() throws JambelException {
+        return jambel.version();
+    }
+
+    @Override
+    public void setDefaultBlinkTimes(int msecOn, int msecOff) throws JambelException {
+        flush();
+        jambel.setDefaultBlinkTimes(msecOn, msecOff);
+    }
+
+    @Override
+    public Status status() throws JambelException {
+        flush();
+        return jambel.status();
+    }
+
+    @Override
+    public void testConnection() throws JambelException {
+        jambel.testConnection();
+    }
+
+    @Override
+    public String getEndpoint() {
+        return jambel.getEndpoint();
+    }
+
+    @Override
+    public JambelModule green() {
+        return greenModule;
+    }
+
+    @Override
+    public JambelModule yellow() {
+        return yellowModule;
+    }
+
+    @Override
+    public JambelModule red() {
+        return redModule;
+    }
+
+    @Override
+    public void setAllLights(LightStatus red, LightStatus yellow, LightStatus green)
+        throws JambelException {
+        final CompletableFuture<Void> all = CompletableFuture.allOf(
+            submitMode(redModule, red),
+            submitMode(yellowModule, yellow),
+            submitMode(greenModule, green));
+        await(all);
+    }
+
+    private CoalescingModule coalescingModule(JambelModule module) {
+        if ((module == redModule) || (module == jambel.red())) {
+            return redModule;
+        }
+        if ((module == yellowModule) || (module == jambel.yellow())) {
+            return yellowModule;
+        }
+        if ((module == greenModule) || (module == jambel.green())) {
+            return greenModule;
+        }
+        throw new IllegalArgumentException("The given module doesn't belong to this jambel");
+    }
+
+    private static void await(CompletableFuture<Void> future) throws JambelException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JambelException("Got interrupted while waiting for the jambel");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JambelException) {
+                throw (JambelException) e.getCause();
+            }
+            throw new JambelException(String.valueOf(e.getCause()));
+        }
+    }
+
+    private class CoalescingModule implements JambelModule {
+        private final JambelModule module;
+        private final int index;
+
+        CoalescingModule(JambelModule module, int index) {
+            this.module = module;
+            this.index = index;
+        }
+
+        @Override
+        public void on() throws JambelException {
+            setMode(LightStatus.ON);
+        }
+
+        @Override
+        public void on(int milliSeconds) throws JambelException {
+            flush();
+            module.on(milliSeconds);
+        }
+
+        @Override
+        public void off() throws JambelException {
+            setMode(LightStatus.OFF);
+        }
+
+        @Override
+        public void blink() throws JambelException {
+            setMode(LightStatus.BLINK);
+        }
+
+        @Override
+        public void blinkInverse() throws JambelException {
+            setMode(LightStatus.BLINK_INVERSE);
+        }
+
+        @Override
+        public void flash() throws JambelException {
+            setMode(LightStatus.FLASH);
+        }
+
+        @Override
+        public void setMode(LightStatus mode) throws JambelException {
+            await(submitMode(this, mode));
+        }
+
+        @Override
+        public void setBlinkTimes(int msecOn, int msecOff) throws JambelException {
+            flush();
+            module.setBlinkTimes(msecOn, msecOff);
+        }
+    }
+}
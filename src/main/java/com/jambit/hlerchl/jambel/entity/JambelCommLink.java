@@ -2,8 +2,66 @@ package com.jambit.hlerchl.jambel.entity;
 
 import com.jambit.hlerchl.jambel.exceptions.JambelException;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface JambelCommLink {
     void setConnectTimeout(int milliSeconds);
 
     String sendCommand(String command) throws JambelException;
+
+    /**
+     * Send the command {@code <prefix><moduleId>,<value>}.
+     * <p>
+     * Links which are able to do so write the numbers straight into their send
+     * buffer. The default implementation builds the command string.
+     *
+     * @param prefix the command up to the module id, e.g. {@code "set="}
+     * @param moduleId the module the command applies to
+     * @param value the argument of the command
+     * @return the response of the jambel
+     * @throws JambelException thrown in case the jambel couldn't be reached
+     *      or behaved unexpectedly
+     */
+    default String sendCommand(String prefix, int moduleId, int value) throws JambelException {
+        return sendCommand(prefix + moduleId + "," + value);
+    }
+
+    /**
+     * Send the command {@code <prefix><moduleId>,<firstValue>,<secondValue>}.
+     *
+     * @see #sendCommand(String, int, int)
+     */
+    default String sendCommand(String prefix, int moduleId, int firstValue, int secondValue)
+        throws JambelException {
+        return sendCommand(prefix + moduleId + "," + firstValue + "," + secondValue);
+    }
+
+    /**
+     * @return the endpoint of the jambel as {@code host:port} or {@code null}
+     *      if it isn't known
+     * @see com.jambit.hlerchl.jambel.Jambel#getEndpoint()
+     */
+    default String getEndpoint() {
+        return null;
+    }
+
+    /**
+     * Send several commands and collect their responses (in the same order).
+     * <p>
+     * Links which are able to do so send all commands via a single connection.
+     * The default implementation simply sends one command after the other.
+     *
+     * @param commands the commands to send
+     * @return the responses to the given commands (in the same order)
+     * @throws JambelException thrown in case the jambel couldn't be reached
+     *      or behaved unexpectedly
+     */
+    default List<String> sendCommands(List<String> commands) throws JambelException {
+        final List<String> responses = new ArrayList<>(commands.size());
+        for (String command : commands) {
+            responses.add(sendCommand(command));
+        }
+        return responses;
+    }
 }
@@ -5,153 +5,265 @@ import com.jambit.hlerchl.jambel.JambelCommand;
 import com.jambit.hlerchl.jambel.JambelModule;
 import com.jambit.hlerchl.jambel.exceptions.JambelCompileException;
 
+/**
+ * Compiles command strings (see {@link com.jambit.hlerchl.jambel.JambelFactory#compileCommand})
+ * into {@link JambelCommand}s.
+ * <p>
+ * The command is read in a single pass by a small tokenizer which only keeps
+ * positions into the string; words are compared in place and numbers are
+ * parsed digit by digit. Errors tell the column at which the command went wrong.
+ * <p>
+ * It accepts the same commands as the former version which split the command
+ * by blanks: words after a light mode (like in {@code red on 100}) are ignored.
+ * In addition, any whitespace separates words.
+ */
 public class JambelCommandCompiler {
+    private static final Jambel.LightStatus[] MODES = Jambel.LightStatus.values();
+
     public static JambelCommand compile(Jambel jambel, String command) throws JambelCompileException {
         if (command == null) {
             throw new JambelCompileException("No command given");
         }
 
-        final String[] cmdParts = command.trim().split("  *");
-        if (cmdParts.length == 0) {
+        final Tokenizer tokens = new Tokenizer(command);
+        if (!tokens.next()) {
             throw new JambelCompileException("No command given");
         }
 
-        return new DescriptiveJambelCommand(compile(jambel, cmdParts), command);
+        return new DescriptiveJambelCommand(compile(jambel, tokens), command);
     }
 
-    private static JambelCommand compile(Jambel jambel, String[] cmdParts) throws JambelCompileException {
-        switch (cmdParts[0]) {
-            case "reset":
-                ensureNumberOfParameters("reset", 0, cmdParts.length - 1);
-                return compileResetCmd(jambel);
-            case "test_connection":
-                ensureNumberOfParameters("test_connection", 0, cmdParts.length - 1);
-                return compileTestConnectionCmd(jambel);
-            case "set_blink_times":
-                ensureNumberOfParameters("set_blink_times", 2, cmdParts.length - 1);
-                return compileSetBlinkTimesCmd(jambel, cmdParts);
-            case "red":
-                return compileModuleCmd(jambel.red(), cmdParts);
-            case "yellow":
-                return compileModuleCmd(jambel.yellow(), cmdParts);
-            case "green":
-                return compileModuleCmd(jambel.green(), cmdParts);
-            case "set_ryg":
-                ensureNumberOfParameters("set_ryg", 3, cmdParts.length - 1);
-                return compileSetRygCmd(jambel, cmdParts);
-        }
-
-        final String command = String.join(" ", cmdParts);
-        throw new JambelCompileException("'" + command + "' is no valid jambel command");
+    private static JambelCommand compile(Jambel jambel, Tokenizer tokens)
+        throws JambelCompileException {
+        if (tokens.is("reset")) {
+            tokens.expectParameters(0);
+            return jambel::reset;
+        }
+        if (tokens.is("test_connection")) {
+            tokens.expectParameters(0);
+            return jambel::testConnection;
+        }
+        if (tokens.is("set_blink_times")) {
+            tokens.expectParameters(2);
+            final int onTimeMsec = tokens.nextInt("on time");
+            final int offTimeMsec = tokens.nextInt("off time");
+            return () -> jambel.setDefaultBlinkTimes(onTimeMsec, offTimeMsec);
+        }
+        if (tokens.is("red")) {
+            return compileModuleCmd(jambel.red(), "red", tokens);
+        }
+        if (tokens.is("yellow")) {
+            return compileModuleCmd(jambel.yellow(), "yellow", tokens);
+        }
+        if (tokens.is("green")) {
+            return compileModuleCmd(jambel.green(), "green", tokens);
+        }
+        if (tokens.is("set_ryg")) {
+            tokens.expectParameters(3);
+            final Jambel.LightStatus redMode = tokens.nextMode();
+            final Jambel.LightStatus yellowMode = tokens.nextMode();
+            final Jambel.LightStatus greenMode = tokens.nextMode();
+            return () -> jambel.setAllLights(redMode, yellowMode, greenMode);
+        }
+
+        throw tokens.error("No valid jambel command");
     }
 
-    private static void ensureNumberOfParameters(
-        String cmdName, int expectedNum, int actualNum) throws JambelCompileException {
-        if (actualNum != expectedNum) {
-            String message = "Command '" + cmdName + "' is expected to have ";
-            switch (expectedNum) {
-                case 0: message = message + "no parameters"; break;
-                case 1: message = message + "one parameter"; break;
-                default: message = message + expectedNum + " parameters";
-            }
-            throw new JambelCompileException(message);
+    private static JambelCommand compileModuleCmd(
+        JambelModule module, String moduleName, Tokenizer tokens) throws JambelCompileException {
+        if (!tokens.next()) {
+            throw tokens.error("jambel-command '" + moduleName + "' requires another parameter");
         }
-    }
 
-    private static JambelCommand compileResetCmd(Jambel jambel) {
-        return jambel::reset;
+        if (tokens.is("on_for")) {
+            tokens.expectParameters(1);
+            final int onTimeMsec = tokens.nextInt("on duration");
+            return () -> module.on(onTimeMsec);
+        }
+        if (tokens.is("set_on_off_times")) {
+            tokens.expectParameters(2);
+            final int onTimeMsec = tokens.nextInt("on time");
+            final int offTimeMsec = tokens.nextInt("off time");
+            return () -> module.setBlinkTimes(onTimeMsec, offTimeMsec);
+        }
+
+        final JambelCommand modeCommand = compileModeCmd(module, tokens);
+        if (modeCommand == null) {
+            throw tokens.error("No valid operation for the " + moduleName + " light");
+        }
+        // any further words are ignored (as they always were)
+        return modeCommand;
     }
 
-    private static JambelCommand compileTestConnectionCmd(Jambel jambel) {
-        return jambel::testConnection;
+    private static JambelCommand compileModeCmd(JambelModule module, Tokenizer tokens) {
+        if (tokens.is("on")) {
+            return module::on;
+        }
+        if (tokens.is("off")) {
+            return module::off;
+        }
+        if (tokens.is("blink")) {
+            return module::blink;
+        }
+        if (tokens.is("blink_inverse")) {
+            return module::blinkInverse;
+        }
+        if (tokens.is("flash")) {
+            return module::flash;
+        }
+        return null;
     }
 
-    private static JambelCommand compileSetBlinkTimesCmd(Jambel jambel, String[] cmdParts)
-        throws JambelCompileException {
-        if (cmdParts.length != 3) {
-            throw new JambelCompileException(
-                "jambel-command 'set_blink_times' requires exactly two arguments");
+    /**
+     * Cuts a command into words separated by blanks.
+     * <p>
+     * The current word is only described by its start and end within the command,
+     * so reading a command doesn't create any strings (except for error messages).
+     */
+    private static final class Tokenizer {
+        private final String command;
+        private int start = 0;
+        private int end = 0;
+
+        Tokenizer(String command) {
+            this.command = command;
         }
 
-        try {
-            final int onTimeMsec = Integer.parseInt(cmdParts[1]);
-            final int offTimeMsec = Integer.parseInt(cmdParts[2]);
+        /**
+         * Move on to the next word.
+         *
+         * @return {@code false} if the command has no more words
+         */
+        boolean next() {
+            start = skipBlanks(end);
+            end = skipWord(start);
+            return start < end;
+        }
 
-            return () -> jambel.setDefaultBlinkTimes(onTimeMsec, offTimeMsec);
-        } catch (Exception e) {
-            throw new JambelCompileException(
-                String.format("Failed to parse on/off times for set_blink_times ('%s')", e.getMessage()));
+        /**
+         * @return {@code true} if the current word is exactly the given one
+         */
+        boolean is(String word) {
+            return (end - start == word.length()) && command.startsWith(word, start);
         }
-    }
 
-    private static JambelCommand compileModuleCmd(
-        JambelModule module, String[] cmdParts) throws JambelCompileException {
-        if (cmdParts.length < 2) {
-            throw new JambelCompileException(
-                "jambel-command '" + cmdParts[0] + "' requires another parameter");
-        }
-
-        switch (cmdParts[1]) {
-            case "on": return module::on;
-            case "on_for":
-                ensureNumberOfParameters(cmdParts[0] + " on_for", 1,
-                    cmdParts.length - 2);
-                return compileOnForCmd(module, cmdParts);
-            case "off": return module::off;
-            case "blink": return module::blink;
-            case "blink_inverse": return module::blinkInverse;
-            case "flash": return module::flash;
-            case "set_on_off_times":
-                ensureNumberOfParameters(cmdParts[0] + " set_on_off_times", 2,
-                    cmdParts.length - 2);
-                return compileSetBlinkTimesCmd(module, cmdParts);
-        }
-
-        final String command = String.join(" ", cmdParts);
-        throw new JambelCompileException("'" + command + "' is no valid jambel command");
-    }
+        /**
+         * @return a copy of the current word (only for messages)
+         */
+        String current() {
+            return command.substring(start, end);
+        }
 
-    private static JambelCommand compileOnForCmd(JambelModule module, String[] cmdParts)
-        throws JambelCompileException {
-        try {
-            final int onTimeMsec = Integer.parseInt(cmdParts[2]);
+        /**
+         * @return the words up to the current one (only for messages)
+         */
+        String wordsSoFar() {
+            return command.substring(skipBlanks(0), end).replaceAll("\\s+", " ");
+        }
 
-            return () -> module.on(onTimeMsec);
-        } catch (Exception e) {
-            throw new JambelCompileException(String.format(
-                "Failed to parse on duration for '%s on_for' (%s)", cmdParts[0], e.getMessage()));
+        /**
+         * Make sure the given number of words follows the current one (without
+         * consuming them).
+         */
+        void expectParameters(int expectedNum) throws JambelCompileException {
+            int actualNum = 0;
+            int pos = skipBlanks(end);
+            int surplusPos = -1;
+            while (pos < command.length()) {
+                if (++actualNum > expectedNum && surplusPos < 0) {
+                    surplusPos = pos;
+                }
+                pos = skipBlanks(skipWord(pos));
+            }
+            if (actualNum == expectedNum) {
+                return;
+            }
+
+            String message = "Command '" + wordsSoFar() + "' is expected to have ";
+            switch (expectedNum) {
+                case 0: message = message + "no parameters"; break;
+                case 1: message = message + "one parameter"; break;
+                default: message = message + expectedNum + " parameters";
+            }
+            throw errorAt(message, (surplusPos >= 0) ? surplusPos : command.length());
         }
-    }
 
-    private static JambelCommand compileSetBlinkTimesCmd(JambelModule module, String[] cmdParts)
-        throws JambelCompileException {
-        try {
-            final int onTimeMsec = Integer.parseInt(cmdParts[2]);
-            final int offTimeMsec = Integer.parseInt(cmdParts[3]);
+        /**
+         * Read the next word as a (decimal) number.
+         */
+        int nextInt(String what) throws JambelCompileException {
+            if (!next()) {
+                throw error("Missing " + what);
+            }
 
-            return () -> module.setBlinkTimes(onTimeMsec, offTimeMsec);
-        } catch (Exception e) {
-            throw new JambelCompileException(String.format(
-                "Failed to parse on/off times for '%s set_blink_times' (%s)", cmdParts[0], e.getMessage()));
+            int pos = start;
+            final boolean negative = command.charAt(pos) == '-';
+            if (negative || (command.charAt(pos) == '+')) {
+                ++pos;
+            }
+            if (pos == end) {
+                throw errorAt("Invalid " + what, pos);
+            }
+
+            long value = 0;
+            for (; pos < end; ++pos) {
+                // like Integer.parseInt, accepts the digits of all scripts
+                final int digit = Character.digit(command.charAt(pos), 10);
+                if (digit < 0) {
+                    throw errorAt("Invalid " + what, pos);
+                }
+                value = value * 10 + digit;
+                if (value > Integer.MAX_VALUE + 1L) {
+                    throw error("Too large " + what);
+                }
+            }
+            if (!negative && (value > Integer.MAX_VALUE)) {
+                throw error("Too large " + what);
+            }
+            return (int) (negative ? -value : value);
         }
-    }
 
-    private static JambelCommand compileSetRygCmd(Jambel jambel, String[] cmdParts)
-    throws JambelCompileException {
-        try {
-            final Jambel.LightStatus redMode = interpretStatus(cmdParts[1]);
-            final Jambel.LightStatus yellowMode = interpretStatus(cmdParts[2]);
-            final Jambel.LightStatus greenMode = interpretStatus(cmdParts[3]);
+        /**
+         * Read the next word as a light mode (upper and lower case are accepted).
+         */
+        Jambel.LightStatus nextMode() throws JambelCompileException {
+            if (!next()) {
+                throw error("Missing light mode");
+            }
+            for (Jambel.LightStatus mode : MODES) {
+                final String name = mode.name();
+                if ((end - start == name.length())
+                        && command.regionMatches(true, start, name, 0, name.length())) {
+                    return mode;
+                }
+            }
+            throw error("Unknown light mode '" + current() + "'");
+        }
 
-            return () -> jambel.setAllLights(redMode, yellowMode, greenMode);
-        } catch (Exception e) {
-            throw new JambelCompileException(String.format(
-                "Failed to parse light modes for 'set_ryg' (%s)", e.getMessage()));
+        /**
+         * @return an exception which points at the current word
+         */
+        JambelCompileException error(String message) {
+            return errorAt(message, start);
+        }
+
+        private JambelCompileException errorAt(String message, int pos) {
+            return new JambelCompileException(
+                String.format("%s (at column %d of '%s')", message, pos + 1, command));
+        }
+
+        private int skipBlanks(int pos) {
+            while ((pos < command.length()) && (command.charAt(pos) <= ' ')) {
+                ++pos;
+            }
+            return pos;
         }
-    }
 
-    private static Jambel.LightStatus interpretStatus(String status) {
-        final String upperCaseStatus = status.toUpperCase();
-        return Jambel.LightStatus.valueOf(upperCaseStatus);
+        private int skipWord(int pos) {
+            while ((pos < command.length()) && (command.charAt(pos) > ' ')) {
+                ++pos;
+            }
+            return pos;
+        }
     }
 }
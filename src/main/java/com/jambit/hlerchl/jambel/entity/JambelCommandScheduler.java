@@ -0,0 +1,299 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.JambelCommand;
+import com.jambit.hlerchl.jambel.JambelModule;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the commands for one jambel ordered by priority.
+ * <p>
+ * Commands are queued and sent one after another on the given executor. Alerts
+ * overtake normal writes which overtake reads; within the same priority the
+ * commands keep their order. A mode change which is still queued gets dropped
+ * when a newer mode change for the same light comes in (its caller is completed
+ * together with the newer command).
+ * <p>
+ * All commands for the jambel should go through the same scheduler; otherwise
+ * the priorities can't be enforced.
+ */
+@Slf4j
+public class JambelCommandScheduler {
+    private static final int RED = 1;
+    private static final int YELLOW = 1 << 1;
+    private static final int GREEN = 1 << 2;
+    private static final int ALL_MODULES = RED | YELLOW | GREEN;
+
+    public enum Priority {
+        ALERT,
+        WRITE,
+        READ
+    }
+
+    private final Jambel jambel;
+    private final Executor executor;
+
+    // guarded by this
+    private final PriorityQueue<QueuedCommand> queue = new PriorityQueue<>(
+        Comparator.comparing((QueuedCommand command) -> command.priority)
+            .thenComparingLong(command -> command.sequenceNr));
+    private final Map<Priority, WaitStatistics> waitStatistics = new EnumMap<>(Priority.class);
+    private long nextSequenceNr = 0;
+    private long numberOfSupersededCommands = 0;
+    private boolean draining = false;
+
+    public JambelCommandScheduler(Jambel jambel, Executor executor) {
+        this.jambel = jambel;
+        this.executor = executor;
+        for (Priority priority : Priority.values()) {
+            waitStatistics.put(priority, new WaitStatistics());
+        }
+    }
+
+    public JambelCommandScheduler(Jambel jambel) {
+        this(jambel, JambelExecutors.defaultExecutor());
+    }
+
+    /**
+     * Queue a mode change for one light.
+     * <p>
+     * A mode change for the same light which is still queued is dropped.
+     *
+     * @param priority the priority of the command
+     * @param module one of the modules of the scheduled jambel
+     * @param mode the new mode of the light
+     * @return a future which completes when the jambel acknowledged the mode
+     *      (or a newer mode for the same light)
+     */
+    public CompletableFuture<Void> setMode(Priority priority, JambelModule module,
+                                           Jambel.LightStatus mode) {
+        return enqueue(priority, moduleBit(module), () -> {
+            module.setMode(mode);
+            return null;
+        });
+    }
+
+    /**
+     * Queue a mode change for all three lights.
+     * <p>
+     * All mode changes which are still queued are dropped.
+     *
+     * @param priority the priority of the command
+     * @param red the new mode of the red light
+     * @param yellow the new mode of the yellow light
+     * @param green the new mode of the green light
+     * @return a future which completes when the jambel acknowledged the modes
+     */
+    public CompletableFuture<Void> setAllLights(Priority priority, Jambel.LightStatus red,
+                                                Jambel.LightStatus yellow,
+                                                Jambel.LightStatus green) {
+        return enqueue(priority, ALL_MODULES, () -> {
+            jambel.setAllLights(red, yellow, green);
+            return null;
+        });
+    }
+
+    /**
+     * Queue a status request with {@link Priority#READ read} priority.
+     *
+     * @return a future which completes with the status of the lights
+     */
+    public CompletableFuture<Jambel.Status> status() {
+        return enqueue(Priority.READ, 0, jambel::status);
+    }
+
+    /**
+     * Queue an arbitrary command. It is never dropped in favour of other commands.
+     *
+     * @param priority the priority of the command
+     * @param command the command to execute
+     * @return a future which completes when the command was executed
+     */
+    public CompletableFuture<Void> submit(Priority priority, JambelCommand command) {
+        return enqueue(priority, 0, () -> {
+            command.execute();
+            return null;
+        });
+    }
+
+    /**
+     * @return the number of commands which wait for being sent
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of mode changes which were dropped because newer ones came in
+     */
+    public synchronized long getNumberOfSupersededCommands() {
+        return numberOfSupersededCommands;
+    }
+
+    /**
+     * @param priority the priority to ask for
+     * @return how long commands of the given priority waited in the queue on average
+     *      (in milliseconds; {@code 0} if none was sent yet)
+     */
+    public synchronized long getAverageWaitMsec(Priority priority) {
+        final WaitStatistics statistics = waitStatistics.get(priority);
+        if (statistics.numberOfCommands == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(
+            statistics.totalWaitNanos / statistics.numberOfCommands);
+    }
+
+    /**
+     * @param priority the priority to ask for
+     * @return the longest time a command of the given priority waited in the queue
+     *      (in milliseconds)
+     */
+    public synchronized long getMaxWaitMsec(Priority priority) {
+        return TimeUnit.NANOSECONDS.toMillis(waitStatistics.get(priority).maxWaitNanos);
+    }
+
+    private <T> CompletableFuture<T> enqueue(Priority priority, int modules, Call<T> call) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        @SuppressWarnings("unchecked")
+        final QueuedCommand command = new QueuedCommand(priority, modules,
+            (Call<Object>) call, (CompletableFuture<Object>) result);
+
+        synchronized (this) {
+            command.sequenceNr = nextSequenceNr++;
+            if (modules != 0) {
+                supersedeQueuedCommands(command);
+            }
+            queue.add(command);
+            if (!draining) {
+                draining = true;
+                startDraining();
+            }
+        }
+        return result;
+    }
+
+    private void supersedeQueuedCommands(QueuedCommand newCommand) {
+        final Iterator<QueuedCommand> it = queue.iterator();
+        final List<QueuedCommand> superseded = new ArrayList<>();
+        while (it.hasNext()) {
+            final QueuedCommand queued = it.next();
+            if ((queued.modules != 0) && ((queued.modules & ~newCommand.modules) == 0)) {
+                it.remove();
+                superseded.add(queued);
+            }
+        }
+
+        for (QueuedCommand queued : superseded) {
+            log.debug("Dropping queued mode change; a newer one came in");
+            ++numberOfSupersededCommands;
+            newCommand.followers.add(queued.result);
+            newCommand.followers.addAll(queued.followers);
+            // an alert must not lose its urgency by being replaced
+            if (queued.priority.compareTo(newCommand.priority) < 0) {
+                newCommand.priority = queued.priority;
+            }
+        }
+    }
+
+    private void startDraining() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining = false;
+            final List<QueuedCommand> rejected = new ArrayList<>(queue);
+            queue.clear();
+            rejected.forEach(command -> command.fail(e));
+        }
+    }
+
+    private void drain() {
+        for (; ; ) {
+            final QueuedCommand command;
+            synchronized (this) {
+                command = queue.poll();
+                if (command == null) {
+                    draining = false;
+                    return;
+                }
+                waitStatistics.get(command.priority).add(System.nanoTime() - command.enqueuedNanos);
+            }
+
+            try {
+                command.complete(command.call.run());
+            } catch (JambelException | RuntimeException e) {
+                command.fail(e);
+            }
+        }
+    }
+
+    private int moduleBit(JambelModule module) {
+        if (module == jambel.red()) {
+            return RED;
+        }
+        if (module == jambel.yellow()) {
+            return YELLOW;
+        }
+        if (module == jambel.green()) {
+            return GREEN;
+        }
+        throw new IllegalArgumentException("The given module doesn't belong to this jambel");
+    }
+
+    private interface Call<T> {
+        T run() throws JambelException;
+    }
+
+    private static class QueuedCommand {
+        private final int modules;
+        private final Call<Object> call;
+        private final CompletableFuture<Object> result;
+        private final List<CompletableFuture<Object>> followers = new ArrayList<>();
+        private final long enqueuedNanos = System.nanoTime();
+        private Priority priority;
+        private long sequenceNr;
+
+        QueuedCommand(Priority priority, int modules, Call<Object> call,
+                      CompletableFuture<Object> result) {
+            this.priority = priority;
+            this.modules = modules;
+            this.call = call;
+            this.result = result;
+        }
+
+        void complete(Object value) {
+            result.complete(value);
+            followers.forEach(follower -> follower.complete(null));
+        }
+
+        void fail(Throwable e) {
+            result.completeExceptionally(e);
+            followers.forEach(follower -> follower.completeExceptionally(e));
+        }
+    }
+
+    private static class WaitStatistics {
+        private long numberOfCommands = 0;
+        private long totalWaitNanos = 0;
+        private long maxWaitNanos = 0;
+
+        void add(long waitNanos) {
+            ++numberOfCommands;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+    }
+}
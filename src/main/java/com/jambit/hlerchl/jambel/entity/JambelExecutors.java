@@ -0,0 +1,51 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Executor and timer used by the library when a caller doesn't bring its own.
+ * <p>
+ * Both use daemon threads so they never keep the JVM alive.
+ */
+public final class JambelExecutors {
+    private JambelExecutors() {
+    }
+
+    /**
+     * Get the shared executor for running blocking jambel calls.
+     *
+     * @return an executor which creates new threads as needed
+     */
+    public static ExecutorService defaultExecutor() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * Get the shared timer for delayed tasks.
+     * <p>
+     * Tasks scheduled here must be short; longer work has to be handed
+     * over to an executor.
+     *
+     * @return a single threaded scheduler
+     */
+    public static ScheduledExecutorService defaultTimer() {
+        return Holder.TIMER;
+    }
+
+    private static final class Holder {
+        static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "jambel-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static final ScheduledExecutorService TIMER =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "jambel-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+}
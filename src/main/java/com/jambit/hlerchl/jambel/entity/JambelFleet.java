@@ -0,0 +1,262 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.JambelCommand;
+import com.jambit.hlerchl.jambel.exceptions.JambelCompileException;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import lombok.Getter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sends the same operation to many jambels in parallel.
+ * <p>
+ * The jambels are worked off by at most {@code maxParallelism} tasks on the given
+ * executor, so a fleet-wide update takes about as long as the slowest jambel instead
+ * of the sum of all of them. Each call waits at most {@code deadlineMsec}; jambels
+ * which weren't done by then are reported as {@link Outcome#TIMED_OUT timed out}.
+ * Jambels which weren't started yet are skipped; calls which are already talking to
+ * their jambel can't be interrupted and finish in the background.
+ */
+@Slf4j
+public class JambelFleet {
+    private static final int DEFAULT_MAX_PARALLELISM = 16;
+    private static final long DEFAULT_DEADLINE_MSEC = 10000;
+
+    @Getter
+    private final List<Jambel> jambels;
+    private final Executor executor;
+
+    @Getter
+    private volatile int maxParallelism = DEFAULT_MAX_PARALLELISM;
+    @Getter
+    private volatile long deadlineMsec = DEFAULT_DEADLINE_MSEC;
+
+    /**
+     * Something to do with each jambel of the fleet.
+     */
+    public interface Operation {
+        void apply(Jambel jambel) throws JambelException;
+    }
+
+    public enum Outcome {
+        SUCCEEDED,
+        FAILED,
+        TIMED_OUT
+    }
+
+    /**
+     * What happened to one jambel.
+     */
+    @Value
+    public static class JambelResult {
+        Outcome outcome;
+        /**
+         * The reason if the operation {@link Outcome#FAILED failed}; {@code null} otherwise.
+         */
+        Exception failure;
+    }
+
+    /**
+     * What happened to all jambels of the fleet.
+     * <p>
+     * The results are kept by position: {@code getResults().get(i)} belongs to
+     * {@code getJambels().get(i)}. Looking up the result of a jambel compares the
+     * instances (not {@code equals}), so two jambel objects for the same device get
+     * results of their own.
+     */
+    public static final class FleetResult {
+        @Getter
+        private final List<Jambel> jambels;
+        @Getter
+        private final List<JambelResult> results;
+        private final Map<Jambel, JambelResult> resultsByInstance = new IdentityHashMap<>();
+
+        FleetResult(List<Jambel> jambels, List<JambelResult> results) {
+            this.jambels = jambels;
+            this.results = results;
+            for (int i = 0; i < jambels.size(); ++i) {
+                resultsByInstance.putIfAbsent(jambels.get(i), results.get(i));
+            }
+        }
+
+        /**
+         * @param jambel one of the jambels of the fleet (the same instance)
+         * @return what happened to the given jambel (to its first position if the
+         *      fleet contains it more than once) or {@code null} if it isn't part of
+         *      the fleet
+         */
+        public JambelResult getResult(Jambel jambel) {
+            return resultsByInstance.get(jambel);
+        }
+
+        /**
+         * @return {@code true} if the operation succeeded for all jambels
+         */
+        public boolean allSucceeded() {
+            return results.stream()
+                .allMatch(result -> result.getOutcome() == Outcome.SUCCEEDED);
+        }
+
+        /**
+         * @return the jambels for which the operation failed or timed out
+         */
+        public List<Jambel> getUnsuccessfulJambels() {
+            final List<Jambel> unsuccessful = new ArrayList<>();
+            for (int i = 0; i < jambels.size(); ++i) {
+                if (results.get(i).getOutcome() != Outcome.SUCCEEDED) {
+                    unsuccessful.add(jambels.get(i));
+                }
+            }
+            return unsuccessful;
+        }
+    }
+
+    public JambelFleet(Collection<? extends Jambel> jambels, Executor executor) {
+        this.jambels = Collections.unmodifiableList(new ArrayList<>(jambels));
+        this.executor = executor;
+    }
+
+    public JambelFleet(Collection<? extends Jambel> jambels) {
+        this(jambels, JambelExecutors.defaultExecutor());
+    }
+
+    /**
+     * @param maxParallelism how many jambels are talked to at the same time (at least one)
+     */
+    public void setMaxParallelism(int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("At least one jambel must be processed at a time");
+        }
+        this.maxParallelism = maxParallelism;
+    }
+
+    /**
+     * @param deadlineMsec how long a call waits for all jambels at most
+     */
+    public void setDeadlineMsec(long deadlineMsec) {
+        this.deadlineMsec = deadlineMsec;
+    }
+
+    /**
+     * Set the modes of all lights of all jambels.
+     *
+     * @param red the new mode of the red lights
+     * @param yellow the new mode of the yellow lights
+     * @param green the new mode of the green lights
+     * @return the result per jambel
+     */
+    public FleetResult setAllLights(Jambel.LightStatus red, Jambel.LightStatus yellow,
+                                    Jambel.LightStatus green) {
+        return apply(jambel -> jambel.setAllLights(red, yellow, green));
+    }
+
+    /**
+     * Reset all jambels.
+     *
+     * @return the result per jambel
+     */
+    public FleetResult reset() {
+        return apply(Jambel::reset);
+    }
+
+    /**
+     * Execute a command string (see {@link JambelCommandCompiler}) on all jambels.
+     *
+     * @param command the command to execute
+     * @return the result per jambel
+     * @throws JambelCompileException thrown in case of a malformed command (before
+     *      any jambel was contacted)
+     */
+    public FleetResult execute(String command) throws JambelCompileException {
+        final Map<Jambel, JambelCommand> compiled = new IdentityHashMap<>();
+        for (Jambel jambel : jambels) {
+            compiled.put(jambel, JambelCommandCompiler.compile(jambel, command));
+        }
+        return apply(jambel -> compiled.get(jambel).execute());
+    }
+
+    /**
+     * Apply an arbitrary operation to all jambels.
+     *
+     * @param operation the operation to apply
+     * @return the result per jambel
+     */
+    public FleetResult apply(Operation operation) {
+        final int numberOfJambels = jambels.size();
+        final long deadlineNanos =
+            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMsec);
+        final AtomicReferenceArray<JambelResult> results =
+            new AtomicReferenceArray<>(numberOfJambels);
+        final AtomicInteger nextIndex = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(numberOfJambels);
+
+        final Runnable worker = () -> {
+            for (int index = nextIndex.getAndIncrement(); index < numberOfJambels;
+                 index = nextIndex.getAndIncrement()) {
+                if (System.nanoTime() - deadlineNanos < 0) {
+                    results.set(index, applyTo(jambels.get(index), operation));
+                }
+                done.countDown();
+            }
+        };
+
+        final int numberOfWorkers = Math.min(maxParallelism, numberOfJambels);
+        for (int i = 0; i < numberOfWorkers; ++i) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                log.warn("Fleet executor rejected a worker; continuing with {} of them", i);
+                if (i == 0) {
+                    // nobody would process the jambels; so do it on the calling thread
+                    worker.run();
+                }
+                break;
+            }
+        }
+
+        awaitUntil(done, deadlineNanos);
+        return collect(results);
+    }
+
+    private JambelResult applyTo(Jambel jambel, Operation operation) {
+        try {
+            operation.apply(jambel);
+            return new JambelResult(Outcome.SUCCEEDED, null);
+        } catch (JambelException | RuntimeException e) {
+            log.debug("Fleet operation failed for a jambel: {}", e.getMessage());
+            return new JambelResult(Outcome.FAILED, e);
+        }
+    }
+
+    private void awaitUntil(CountDownLatch done, long deadlineNanos) {
+        try {
+            done.await(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            // report what is known so far
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private FleetResult collect(AtomicReferenceArray<JambelResult> results) {
+        final List<JambelResult> collected = new ArrayList<>(jambels.size());
+        for (int i = 0; i < jambels.size(); ++i) {
+            final JambelResult result = results.get(i);
+            collected.add((result != null) ? result : new JambelResult(Outcome.TIMED_OUT, null));
+        }
+        return new FleetResult(jambels, Collections.unmodifiableList(collected));
+    }
+}
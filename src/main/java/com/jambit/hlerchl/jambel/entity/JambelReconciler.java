@@ -0,0 +1,293 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.JambelModule;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps a jambel in a desired state.
+ * <p>
+ * Instead of switching lights imperatively, a caller publishes the state the jambel
+ * should be in (see {@link #setTarget}). The reconciler periodically reads the
+ * status of the jambel and sends the minimal set of commands to converge it to the
+ * target: nothing if it already matches, a single {@code set} if one light differs
+ * and one {@code set_all} otherwise. Blink times can't be read from the jambel; they
+ * are sent when they changed and again after the jambel was unreachable (it might
+ * have been restarted).
+ * <p>
+ * Only the latest target is ever sent, no matter how often it changes in between.
+ * While the jambel can't be reached the reconciler backs off exponentially.
+ */
+@Slf4j
+public class JambelReconciler implements Closeable {
+    private static final int DEFAULT_POLL_INTERVAL_MSEC = 10000;
+    private static final int DEFAULT_MIN_BACKOFF_MSEC = 500;
+    private static final int DEFAULT_MAX_BACKOFF_MSEC = 60000;
+
+    private final Jambel jambel;
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+    private final Lock reconcileLock = new ReentrantLock();
+
+    @Setter
+    private volatile int pollIntervalMsec = DEFAULT_POLL_INTERVAL_MSEC;
+    @Setter
+    private volatile int minBackoffMsec = DEFAULT_MIN_BACKOFF_MSEC;
+    @Setter
+    private volatile int maxBackoffMsec = DEFAULT_MAX_BACKOFF_MSEC;
+
+    // guarded by this
+    private DesiredState target = null;
+    private long targetGeneration = 0;
+    private int consecutiveFailures = 0;
+    private ScheduledFuture<?> nextRun = null;
+    private boolean closed = false;
+
+    // guarded by reconcileLock
+    private DesiredState appliedBlinkTimes = null;
+
+    /**
+     * The state a jambel should be in.
+     * <p>
+     * Blink times which are {@code null} are left alone.
+     */
+    @Value
+    @Builder(toBuilder = true)
+    public static class DesiredState {
+        @NonNull Jambel.Status lights;
+        BlinkTimes defaultBlinkTimes;
+        BlinkTimes redBlinkTimes;
+        BlinkTimes yellowBlinkTimes;
+        BlinkTimes greenBlinkTimes;
+    }
+
+    /**
+     * Durations of the "on" and "off" phases of a blinking light.
+     */
+    @Value
+    public static class BlinkTimes {
+        int msecOn;
+        int msecOff;
+    }
+
+    public JambelReconciler(Jambel jambel, Executor executor, ScheduledExecutorService timer) {
+        this.jambel = jambel;
+        this.executor = executor;
+        this.timer = timer;
+    }
+
+    public JambelReconciler(Jambel jambel) {
+        this(jambel, JambelExecutors.defaultExecutor(), JambelExecutors.defaultTimer());
+    }
+
+    /**
+     * Publish the state the jambel should converge to.
+     * <p>
+     * The reconciler starts working on the new target right away (unless it is
+     * currently backing off from an unreachable jambel).
+     *
+     * @param target the desired state of the jambel
+     */
+    public synchronized void setTarget(DesiredState target) {
+        this.target = target;
+        ++targetGeneration;
+        if (consecutiveFailures == 0) {
+            scheduleRun(0);
+        }
+    }
+
+    /**
+     * Publish the light modes the jambel should converge to (keeping the blink times).
+     *
+     * @param lights the desired modes of the three lights
+     */
+    public synchronized void setTarget(Jambel.Status lights) {
+        final DesiredState.DesiredStateBuilder builder = (target != null)
+            ? target.toBuilder()
+            : DesiredState.builder();
+        setTarget(builder.lights(lights).build());
+    }
+
+    /**
+     * Stop reconciling. The jambel stays in whatever state it is.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (nextRun != null) {
+            nextRun.cancel(false);
+            nextRun = null;
+        }
+    }
+
+    /**
+     * Compare the jambel with the current target once and send the necessary commands.
+     *
+     * @return {@code true} if commands had to be sent; {@code false} if the jambel
+     *      already was in the desired state (or there is no target yet)
+     * @throws JambelException thrown in case the jambel couldn't be reached
+     *      or behaved unexpectedly
+     */
+    public boolean reconcileNow() throws JambelException {
+        reconcileLock.lock();
+        try {
+            final DesiredState desired;
+            synchronized (this) {
+                desired = target;
+            }
+            if (desired == null) {
+                return false;
+            }
+
+            try {
+                final boolean blinkTimesSent = applyBlinkTimes(desired);
+                final boolean modesSent = applyLights(desired.getLights());
+                return blinkTimesSent || modesSent;
+            } catch (JambelException e) {
+                // the jambel might have been restarted; blink times are unknown then
+                appliedBlinkTimes = null;
+                throw e;
+            }
+        } finally {
+            reconcileLock.unlock();
+        }
+    }
+
+    private boolean applyBlinkTimes(DesiredState desired) throws JambelException {
+        final DesiredState applied = appliedBlinkTimes;
+        boolean sent = false;
+
+        if (blinkTimesChanged(desired.getDefaultBlinkTimes(), applied,
+                DesiredState::getDefaultBlinkTimes)) {
+            final BlinkTimes times = desired.getDefaultBlinkTimes();
+            jambel.setDefaultBlinkTimes(times.getMsecOn(), times.getMsecOff());
+            sent = true;
+        }
+        sent |= applyModuleBlinkTimes(jambel.red(), desired.getRedBlinkTimes(),
+            applied, DesiredState::getRedBlinkTimes);
+        sent |= applyModuleBlinkTimes(jambel.yellow(), desired.getYellowBlinkTimes(),
+            applied, DesiredState::getYellowBlinkTimes);
+        sent |= applyModuleBlinkTimes(jambel.green(), desired.getGreenBlinkTimes(),
+            applied, DesiredState::getGreenBlinkTimes);
+
+        appliedBlinkTimes = desired;
+        return sent;
+    }
+
+    private boolean applyModuleBlinkTimes(JambelModule module, BlinkTimes desired,
+                                          DesiredState applied, BlinkTimesGetter getter)
+        throws JambelException {
+        if (!blinkTimesChanged(desired, applied, getter)) {
+            return false;
+        }
+        module.setBlinkTimes(desired.getMsecOn(), desired.getMsecOff());
+        return true;
+    }
+
+    private boolean blinkTimesChanged(BlinkTimes desired, DesiredState applied,
+                                      BlinkTimesGetter getter) {
+        if (desired == null) {
+            return false;
+        }
+        return (applied == null) || !Objects.equals(desired, getter.get(applied));
+    }
+
+    private boolean applyLights(Jambel.Status desired) throws JambelException {
+        final Jambel.Status actual = jambel.status();
+
+        final boolean redDiffers = actual.getRed() != desired.getRed();
+        final boolean yellowDiffers = actual.getYellow() != desired.getYellow();
+        final boolean greenDiffers = actual.getGreen() != desired.getGreen();
+        final int numDifferences =
+            (redDiffers ? 1 : 0) + (yellowDiffers ? 1 : 0) + (greenDiffers ? 1 : 0);
+
+        if (numDifferences == 0) {
+            return false;
+        }
+
+        log.debug("Converging jambel from {} to {}", actual, desired);
+        if (numDifferences > 1) {
+            jambel.setAllLights(desired.getRed(), desired.getYellow(), desired.getGreen());
+        } else if (redDiffers) {
+            jambel.red().setMode(desired.getRed());
+        } else if (yellowDiffers) {
+            jambel.yellow().setMode(desired.getYellow());
+        } else {
+            jambel.green().setMode(desired.getGreen());
+        }
+        return true;
+    }
+
+    private synchronized void scheduleRun(long delayMsec) {
+        if (closed) {
+            return;
+        }
+        if (nextRun != null) {
+            nextRun.cancel(false);
+        }
+        nextRun = timer.schedule(this::startRun, delayMsec, TimeUnit.MILLISECONDS);
+    }
+
+    private void startRun() {
+        try {
+            executor.execute(this::run);
+        } catch (RejectedExecutionException e) {
+            // reconciling blocks, so it must not run on the timer; back off like after a failure
+            synchronized (this) {
+                ++consecutiveFailures;
+                final long backoff = backoffMsec(consecutiveFailures);
+                log.warn("Executor rejected reconciling the jambel; next attempt in {} msec",
+                    backoff);
+                scheduleRun(backoff);
+            }
+        }
+    }
+
+    private void run() {
+        final long generation;
+        synchronized (this) {
+            generation = targetGeneration;
+        }
+
+        try {
+            reconcileNow();
+            synchronized (this) {
+                consecutiveFailures = 0;
+                // a new target came in while we were busy; handle it right away
+                scheduleRun((generation != targetGeneration) ? 0 : pollIntervalMsec);
+            }
+        } catch (JambelException | RuntimeException e) {
+            synchronized (this) {
+                ++consecutiveFailures;
+                final long backoff = backoffMsec(consecutiveFailures);
+                log.debug("Reconciling jambel failed ({}); next attempt in {} msec",
+                    e.getMessage(), backoff);
+                scheduleRun(backoff);
+            }
+        }
+    }
+
+    private long backoffMsec(int failures) {
+        final long backoff = (long) minBackoffMsec << Math.min(failures - 1, 30);
+        return Math.min(backoff, maxBackoffMsec);
+    }
+
+    private interface BlinkTimesGetter {
+        BlinkTimes get(DesiredState state);
+    }
+}
@@ -0,0 +1,295 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the status of jambels and tells listeners when it changed.
+ * <p>
+ * The jambel can't report changes on its own, so the watcher asks for the status
+ * from time to time. Right after a change the status is polled every
+ * {@code minPollIntervalMsec}; as long as nothing changes (or the jambel can't be
+ * reached) the interval doubles up to {@code maxPollIntervalMsec}.
+ * <p>
+ * All listeners of the same device share a single poll, even if they subscribed
+ * via different instances (e.g. a {@link RawJambel} and a {@link CoalescingJambel}
+ * wrapping it). Devices are told apart by their {@link Jambel#getEndpoint()
+ * endpoint}; instances without a known endpoint are polled on their own.
+ */
+@Slf4j
+public class JambelWatcher implements Closeable {
+    private static final int DEFAULT_MIN_POLL_INTERVAL_MSEC = 500;
+    private static final int DEFAULT_MAX_POLL_INTERVAL_MSEC = 30000;
+
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+
+    @Setter
+    private volatile int minPollIntervalMsec = DEFAULT_MIN_POLL_INTERVAL_MSEC;
+    @Setter
+    private volatile int maxPollIntervalMsec = DEFAULT_MAX_POLL_INTERVAL_MSEC;
+
+    // guarded by this; keyed by the endpoint (or the instance if it has none)
+    private final Map<Object, Poller> pollers = new HashMap<>();
+    private boolean closed = false;
+
+    /**
+     * Gets notified about status changes of a jambel.
+     */
+    public interface Listener {
+        /**
+         * Called whenever a poll returned a status which differs from the previous one.
+         *
+         * @param jambel the watched jambel
+         * @param oldStatus the previous status or {@code null} if this is the first one
+         * @param newStatus the current status
+         */
+        void statusChanged(Jambel jambel, Jambel.Status oldStatus, Jambel.Status newStatus);
+
+        /**
+         * Called whenever polling the status failed.
+         *
+         * @param jambel the watched jambel
+         * @param e the reason for the failure
+         */
+        default void pollFailed(Jambel jambel, JambelException e) {
+        }
+    }
+
+    public JambelWatcher(Executor executor, ScheduledExecutorService timer) {
+        this.executor = executor;
+        this.timer = timer;
+    }
+
+    public JambelWatcher() {
+        this(JambelExecutors.defaultExecutor(), JambelExecutors.defaultTimer());
+    }
+
+    /**
+     * Start telling the given listener about status changes of a jambel.
+     * <p>
+     * If the status of the jambel is already known, the listener is told about it
+     * right away (with {@code oldStatus} being {@code null}).
+     *
+     * @param jambel the jambel to watch
+     * @param listener the listener to notify
+     */
+    public synchronized void subscribe(Jambel jambel, Listener listener) {
+        if (closed) {
+            throw new IllegalStateException("The watcher is already closed");
+        }
+        final Object device = deviceOf(jambel);
+        final Poller poller = pollers.get(device);
+        if (poller != null) {
+            poller.add(jambel, listener);
+            return;
+        }
+
+        final Poller newPoller = new Poller(jambel);
+        newPoller.add(jambel, listener);
+        pollers.put(device, newPoller);
+        newPoller.schedule(0);
+    }
+
+    /**
+     * Stop telling the given listener about status changes of a jambel.
+     * <p>
+     * The jambel isn't polled anymore once its last listener is gone.
+     *
+     * @param jambel the watched jambel
+     * @param listener the listener to remove
+     */
+    public synchronized void unsubscribe(Jambel jambel, Listener listener) {
+        final Object device = deviceOf(jambel);
+        final Poller poller = pollers.get(device);
+        if ((poller != null) && poller.remove(jambel, listener)) {
+            pollers.remove(device);
+            poller.stop();
+        }
+    }
+
+    /**
+     * Stop polling all jambels.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        pollers.values().forEach(Poller::stop);
+        pollers.clear();
+    }
+
+    private static Object deviceOf(Jambel jambel) {
+        final String endpoint = jambel.getEndpoint();
+        return (endpoint != null) ? endpoint : new InstanceKey(jambel);
+    }
+
+    /**
+     * Compares jambels without a known endpoint by identity.
+     */
+    private static final class InstanceKey {
+        private final Jambel jambel;
+
+        InstanceKey(Jambel jambel) {
+            this.jambel = jambel;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return (other instanceof InstanceKey) && (((InstanceKey) other).jambel == jambel);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(jambel);
+        }
+    }
+
+    /**
+     * A listener together with the instance it subscribed with (which it gets told about).
+     */
+    private static final class Subscription {
+        private final Jambel jambel;
+        private final Listener listener;
+
+        Subscription(Jambel jambel, Listener listener) {
+            this.jambel = jambel;
+            this.listener = listener;
+        }
+    }
+
+    private class Poller {
+        // polled as long as it has subscriptions; any instance of the device will do
+        private volatile Jambel jambel;
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+        // guarded by JambelWatcher.this
+        private ScheduledFuture<?> nextPoll = null;
+        private boolean stopped = false;
+        private Jambel.Status lastStatus = null;
+        private long intervalMsec = 0;
+
+        Poller(Jambel jambel) {
+            this.jambel = jambel;
+        }
+
+        void add(Jambel jambel, Listener listener) {
+            final Subscription subscription = new Subscription(jambel, listener);
+            subscriptions.add(subscription);
+            final Jambel.Status knownStatus = lastStatus;
+            if (knownStatus != null) {
+                executor.execute(() -> notifyChanged(subscription, null, knownStatus));
+            }
+        }
+
+        /**
+         * @return {@code true} if there are no listeners left
+         */
+        boolean remove(Jambel jambel, Listener listener) {
+            subscriptions.removeIf(subscription ->
+                (subscription.jambel == jambel) && (subscription.listener == listener));
+            if (subscriptions.isEmpty()) {
+                return true;
+            }
+            if (this.jambel == jambel) {
+                this.jambel = subscriptions.get(0).jambel;
+            }
+            return false;
+        }
+
+        void stop() {
+            stopped = true;
+            if (nextPoll != null) {
+                nextPoll.cancel(false);
+                nextPoll = null;
+            }
+        }
+
+        void schedule(long delayMsec) {
+            if (stopped) {
+                return;
+            }
+            nextPoll = timer.schedule(this::startPoll, delayMsec, TimeUnit.MILLISECONDS);
+        }
+
+        private void startPoll() {
+            try {
+                executor.execute(this::poll);
+            } catch (RejectedExecutionException e) {
+                // polling blocks, so it must not run on the timer; try again later instead
+                synchronized (JambelWatcher.this) {
+                    intervalMsec = longerInterval();
+                    log.warn("Executor rejected polling the jambel; next attempt in {} msec",
+                        intervalMsec);
+                    schedule(intervalMsec);
+                }
+            }
+        }
+
+        private void poll() {
+            try {
+                final Jambel.Status status = jambel.status();
+                final Jambel.Status oldStatus;
+                synchronized (JambelWatcher.this) {
+                    oldStatus = lastStatus;
+                    lastStatus = status;
+                    if (status.equals(oldStatus)) {
+                        intervalMsec = longerInterval();
+                    } else {
+                        intervalMsec = minPollIntervalMsec;
+                    }
+                    schedule(intervalMsec);
+                }
+                if (!status.equals(oldStatus)) {
+                    subscriptions.forEach(
+                        subscription -> notifyChanged(subscription, oldStatus, status));
+                }
+            } catch (JambelException | RuntimeException e) {
+                // keep polling whatever went wrong; otherwise the jambel is never watched again
+                synchronized (JambelWatcher.this) {
+                    intervalMsec = longerInterval();
+                    log.debug("Polling jambel failed ({}); next attempt in {} msec",
+                        e.getMessage(), intervalMsec);
+                    schedule(intervalMsec);
+                }
+                final JambelException failure = (e instanceof JambelException)
+                    ? (JambelException) e
+                    : new JambelException("Polling jambel failed: " + e);
+                subscriptions.forEach(subscription -> notifyFailed(subscription, failure));
+            }
+        }
+
+        private long longerInterval() {
+            return Math.max(minPollIntervalMsec, Math.min(intervalMsec * 2, maxPollIntervalMsec));
+        }
+
+        private void notifyChanged(Subscription subscription, Jambel.Status oldStatus,
+                                   Jambel.Status newStatus) {
+            try {
+                subscription.listener.statusChanged(subscription.jambel, oldStatus, newStatus);
+            } catch (RuntimeException e) {
+                log.warn("Listener failed to handle status change", e);
+            }
+        }
+
+        private void notifyFailed(Subscription subscription, JambelException failure) {
+            try {
+                subscription.listener.pollFailed(subscription.jambel, failure);
+            } catch (RuntimeException e) {
+                log.warn("Listener failed to handle failed poll", e);
+            }
+        }
+    }
+}
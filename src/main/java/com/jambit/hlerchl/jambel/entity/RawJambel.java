@@ -6,18 +6,55 @@ import com.jambit.hlerchl.jambel.exceptions.JambelException;
 import com.jambit.hlerchl.jambel.exceptions.JambelResponseException;
 import com.jambit.hlerchl.jambel.exceptions.LookupException;
 import lombok.Getter;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 @Slf4j
 public class RawJambel implements Jambel {
+    private static final int NUMBER_OF_MODES = LightStatus.values().length;
+    // the jambel supports up to four modules
+    private static final int MAX_MODULE_ID = 4;
+    private static final String STATUS_PREFIX = "status=";
+    private static final String SET_PREFIX = "set=";
+    private static final String BLINK_TIME_PREFIX = "blink_time=";
+
+    // the commands with fixed arguments are built once; index by the status ids
+    private static final String[] SET_ALL_COMMANDS = buildSetAllCommands();
+    private static final String[][] SET_MODE_COMMANDS = buildSetModeCommands();
+
     private final JambelCommLink commLink;
     private final RawModule redModule;
     private final RawModule yellowModule;
     private final RawModule greenModule;
     private String version = null;
 
+    // guards the shadow state and serializes the commands; a lock (unlike a monitor)
+    // doesn't pin a virtual thread to its carrier while it waits for the jambel
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // write-through copy of what we believe the jambel's state is (if enabled)
+    @Getter
+    private boolean shadowStateEnabled = false;
+    private BlinkTimes shadowDefaultBlinkTimes = null;
+
+    // concurrent status() calls share one request; the result may be reused for a while
+    private final Object statusLock = new Object();
+    @Getter
+    private volatile int statusCacheTtlMsec = 0;
+    // guarded by statusLock
+    private CompletableFuture<Status> inFlightStatus = null;
+    private Status cachedStatus = null;
+    private long cachedStatusNanos = 0;
+    private long writeGeneration = 0;
+
     public RawJambel(JambelCommLink commLink, int redModuleId, int yellowModuleId, int greenModuleId) {
         this.commLink = commLink;
         this.redModule = new RawModule(redModuleId);
@@ -29,9 +66,100 @@ public class RawJambel implements Jambel {
         commLink.setConnectTimeout(milliSeconds);
     }
 
+    @Override
+    public String getEndpoint() {
+        return commLink.getEndpoint();
+    }
+
+    /**
+     * Enable or disable the "shadow state" of this jambel.
+     * <p>
+     * With shadow state enabled, the jambel instance remembers the light modes and
+     * blink times it has successfully sent (or read via {@link #status()}). Commands
+     * which wouldn't change anything are then not sent at all.
+     * <p>
+     * The shadow state is forgotten after {@link #reset()}, after a failed command
+     * and (for a single light) after {@link JambelModule#on(int)}. Note that changes
+     * made by others (e.g. another process talking to the same jambel) can't be
+     * noticed; call {@link #resyncShadowState()} from time to time if that may happen.
+     *
+     * @param enabled {@code true} to suppress redundant commands
+     */
+    public void setShadowStateEnabled(boolean enabled) {
+        lock.lock();
+        try {
+            shadowStateEnabled = enabled;
+            invalidateShadowState();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget everything the shadow state knows about the jambel.
+     * <p>
+     * The next command for each light is sent for sure.
+     */
+    public void invalidateShadowState() {
+        lock.lock();
+        try {
+            shadowDefaultBlinkTimes = null;
+            redModule.invalidateShadowState();
+            yellowModule.invalidateShadowState();
+            greenModule.invalidateShadowState();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Re-read the light modes from the jambel into the shadow state.
+     * <p>
+     * The blink times can't be read from the jambel; they stay as they are.
+     *
+     * @return the current status of the three lights
+     * @throws JambelException thrown in case the jambel couldn't be reached
+     *      or behaved unexpectedly
+     */
+    public Status resyncShadowState() throws JambelException {
+        return status();
+    }
+
+    /**
+     * Ask the shadow state for the mode of a light.
+     *
+     * @param module one of the modules of this jambel
+     * @return the mode of the light or {@code null} if it isn't known
+     */
+    LightStatus getShadowMode(JambelModule module) {
+        lock.lock();
+        try {
+            return shadowStateEnabled ? rawModule(module).shadowMode : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Let {@link #status()} reuse a recently read status.
+     * <p>
+     * A status which was read less than the given time ago is returned without
+     * asking the jambel again. Any command sent via this instance which changes
+     * the jambel's state discards the cached status. Regardless of this setting
+     * callers which ask for the status at the same time share a single request.
+     *
+     * @param milliSeconds how long a status stays fresh; {@code 0} disables caching
+     */
+    public void setStatusCacheTtlMsec(int milliSeconds) {
+        synchronized (statusLock) {
+            statusCacheTtlMsec = milliSeconds;
+            cachedStatus = null;
+        }
+    }
+
     @Override
     public void reset() throws JambelException {
-        sendOkCommand("reset");
+        sendWriteCommand("reset", () -> false, this::invalidateShadowState);
     }
 
     @Override
@@ -44,14 +172,98 @@ public class RawJambel implements Jambel {
 
     @Override
     public Status status() throws JambelException {
-        final String statusResponse = sendCommandExpectResponse("status");
-        if (!statusResponse.startsWith("status=")) {
-            throw new JambelResponseException(
-                String.format("Expected response for 'status' to start with 'status='; got '%s'",
-                    statusResponse));
+        final CompletableFuture<Status> flight;
+        final long generation;
+        synchronized (statusLock) {
+            if ((cachedStatus != null) && (System.nanoTime() - cachedStatusNanos
+                    < TimeUnit.MILLISECONDS.toNanos(statusCacheTtlMsec))) {
+                return cachedStatus;
+            }
+            if (inFlightStatus != null) {
+                flight = inFlightStatus;
+                generation = -1;
+            } else {
+                flight = new CompletableFuture<>();
+                inFlightStatus = flight;
+                generation = writeGeneration;
+            }
         }
 
-        return parseStatusResponse(statusResponse);
+        if (generation < 0) {
+            log.debug("Joining a status request which is already on its way");
+            return awaitStatus(flight);
+        }
+
+        try {
+            final Status status = readStatus();
+            synchronized (statusLock) {
+                if (inFlightStatus == flight) {
+                    inFlightStatus = null;
+                }
+                // don't cache what might have been read before a local write
+                if ((statusCacheTtlMsec > 0) && (generation == writeGeneration)) {
+                    cachedStatus = status;
+                    cachedStatusNanos = System.nanoTime();
+                }
+            }
+            flight.complete(status);
+            return status;
+        } catch (JambelException | RuntimeException e) {
+            synchronized (statusLock) {
+                if (inFlightStatus == flight) {
+                    inFlightStatus = null;
+                }
+            }
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static Status awaitStatus(CompletableFuture<Status> flight) throws JambelException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JambelException("Got interrupted while waiting for the jambel");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JambelException) {
+                throw (JambelException) e.getCause();
+            }
+            throw new JambelException(String.valueOf(e.getCause()));
+        }
+    }
+
+    /**
+     * Forget the cached status and don't hand out requests which are on their way.
+     */
+    private void invalidateStatusCache() {
+        synchronized (statusLock) {
+            ++writeGeneration;
+            cachedStatus = null;
+            inFlightStatus = null;
+        }
+    }
+
+    private Status readStatus() throws JambelException {
+        lock.lock();
+        try {
+            final String statusResponse = sendCommandExpectResponse("status");
+            if (!statusResponse.startsWith(STATUS_PREFIX)) {
+                throw new JambelResponseException(String.format(
+                    "Expected response for 'status' to start with 'status='; got '%s'",
+                    statusResponse));
+            }
+
+            final Status status = parseStatusResponse(statusResponse);
+            if (shadowStateEnabled) {
+                redModule.shadowMode = status.getRed();
+                yellowModule.shadowMode = status.getYellow();
+                greenModule.shadowMode = status.getGreen();
+            }
+            return status;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -60,23 +272,23 @@ public class RawJambel implements Jambel {
         sendOkCommand("test");
     }
 
+    /**
+     * Parse a status response (which looks like {@code status=1,0,2,0}) without
+     * allocating anything on the way.
+     *
+     * @return the canonical instance for the parsed status
+     */
     private Status parseStatusResponse(String statusResponse) throws JambelResponseException {
-        List<LightStatus> lightStatus = new ArrayList<>(3);
         try {
-            lightStatus.add(interpretStatusId(extractModuleStatus(1, statusResponse)));
-            lightStatus.add(interpretStatusId(extractModuleStatus(2, statusResponse)));
-            lightStatus.add(interpretStatusId(extractModuleStatus(3, statusResponse)));
-        } catch (Exception e) {
+            return Status.of(
+                extractModuleStatus(redModule.getModuleId(), statusResponse),
+                extractModuleStatus(yellowModule.getModuleId(), statusResponse),
+                extractModuleStatus(greenModule.getModuleId(), statusResponse));
+        } catch (LookupException e) {
             throw new JambelResponseException(
                 String.format("Failed to parse response for 'status' (which is '%s')",
                     statusResponse));
         }
-
-        return new Status(
-            lightStatus.get(redModule.getModuleId() - 1),
-            lightStatus.get(yellowModule.getModuleId() - 1),
-            lightStatus.get(greenModule.getModuleId() - 1)
-        );
     }
 
     private LightStatus interpretStatusId(int statusId) throws LookupException {
@@ -91,7 +303,7 @@ public class RawJambel implements Jambel {
         }
     }
 
-    private int getStatusId(LightStatus status) throws LookupException {
+    private static int getStatusId(LightStatus status) throws LookupException {
         switch (status) {
             case OFF: return 0;
             case ON: return 1;
@@ -103,7 +315,7 @@ public class RawJambel implements Jambel {
         }
     }
 
-    private String getStatusCommand(LightStatus status) throws LookupException {
+    private static String getStatusCommand(LightStatus status) throws LookupException {
         switch (status) {
             case OFF: return "off";
             case ON: return "on";
@@ -116,18 +328,42 @@ public class RawJambel implements Jambel {
         }
     }
 
-    private int extractModuleStatus(int moduleId, String statusResponse) {
-        final String messageStart = "status=";
-        final String statusFormat = "x,";
-        final int startIndex = messageStart.length() + ((moduleId - 1) * statusFormat.length());
-        String id = statusResponse.substring(startIndex, startIndex + 1);
-        return Integer.parseInt(id);
+    private LightStatus extractModuleStatus(int moduleId, String statusResponse)
+        throws LookupException {
+        // each module is reported by a single digit followed by a comma
+        final int index = STATUS_PREFIX.length() + ((moduleId - 1) * 2);
+        if ((moduleId < 1) || (index >= statusResponse.length())) {
+            throw new LookupException("No status for module " + moduleId);
+        }
+        return interpretStatusId(statusResponse.charAt(index) - '0');
     }
 
     @Override
     public void setDefaultBlinkTimes(int msecOn, int msecOff) throws JambelException {
-        sendOkCommand("blink_time_on=" + msecOn);
-        sendOkCommand("blink_time_off=" + msecOff);
+        lock.lock();
+        try {
+            final BlinkTimes blinkTimes = new BlinkTimes(msecOn, msecOff);
+            if (shadowStateEnabled && blinkTimes.equals(shadowDefaultBlinkTimes)) {
+                log.debug("Skipping default blink times {}; they are already set", blinkTimes);
+                return;
+            }
+            batch().setDefaultBlinkTimes(msecOn, msecOff).execute();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start collecting several commands which are then sent via a single connection.
+     * <p>
+     * Setting several lights in a row costs one connection setup for each
+     * single command. A batch writes all its commands at once and then reads
+     * all responses. The batch fails as a whole if any of its commands fails.
+     *
+     * @return an empty batch for this jambel
+     */
+    public Batch batch() {
+        return new Batch();
     }
 
     @Override
@@ -148,52 +384,323 @@ public class RawJambel implements Jambel {
     @Override
     public void setAllLights(LightStatus redStatus, LightStatus yellowStatus,
                              LightStatus greenStatus) throws JambelException {
+        sendWriteCommand(setAllCommand(redStatus, yellowStatus, greenStatus),
+            () -> (redModule.shadowMode == redStatus)
+                && (yellowModule.shadowMode == yellowStatus)
+                && (greenModule.shadowMode == greenStatus),
+            () -> {
+                redModule.shadowMode = redStatus;
+                yellowModule.shadowMode = yellowStatus;
+                greenModule.shadowMode = greenStatus;
+            });
+    }
+
+    private String setAllCommand(LightStatus redStatus, LightStatus yellowStatus,
+                                 LightStatus greenStatus) throws JambelException {
         try {
-            Map<Integer, Integer> lightCodes = new HashMap<>(3);
-            lightCodes.put(redModule.moduleId, getStatusId(redStatus));
-            lightCodes.put(yellowModule.moduleId, getStatusId(yellowStatus));
-            lightCodes.put(greenModule.moduleId, getStatusId(greenStatus));
+            return SET_ALL_COMMANDS[
+                getStatusId(redStatus) * setAllWeight(redModule.moduleId)
+                + getStatusId(yellowStatus) * setAllWeight(yellowModule.moduleId)
+                + getStatusId(greenStatus) * setAllWeight(greenModule.moduleId)];
+        } catch (LookupException e) {
+            throw new JambelException(e.getMessage());
+        }
+    }
 
-            // the jambel supports up to four modules, so we have to send four values
-            // otherwise it will halt and wait for the fourth value
-            final String command = "set_all=" +
-                lightCodes.get(1) + "," + lightCodes.get(2) + "," + lightCodes.get(3) + ",0";
+    /**
+     * @return the factor of a module's status id in the index of {@link #SET_ALL_COMMANDS}
+     */
+    private static int setAllWeight(int moduleId) throws LookupException {
+        switch (moduleId) {
+            case 1: return NUMBER_OF_MODES * NUMBER_OF_MODES;
+            case 2: return NUMBER_OF_MODES;
+            case 3: return 1;
+            default:
+                throw new LookupException("Module " + moduleId + " can't be set via 'set_all'");
+        }
+    }
 
-            sendOkCommand(command);
+    private String setModeCommand(int moduleId, LightStatus mode) throws JambelException {
+        try {
+            if ((moduleId >= 1) && (moduleId <= MAX_MODULE_ID)) {
+                return SET_MODE_COMMANDS[moduleId - 1][getStatusId(mode)];
+            }
+            return SET_PREFIX + moduleId + "," + getStatusCommand(mode);
         } catch (LookupException e) {
             throw new JambelException(e.getMessage());
         }
     }
 
-    private synchronized String sendCommandExpectResponse(String command) throws JambelException {
-        final String response = commLink.sendCommand(command);
-        if (response == null) {
-            throw new JambelResponseException(
-                String.format("Received null, expected response for '%s'", command));
+    private static String[] buildSetAllCommands() {
+        final String[] commands = new String[NUMBER_OF_MODES * NUMBER_OF_MODES * NUMBER_OF_MODES];
+        int index = 0;
+        for (int first = 0; first < NUMBER_OF_MODES; ++first) {
+            for (int second = 0; second < NUMBER_OF_MODES; ++second) {
+                for (int third = 0; third < NUMBER_OF_MODES; ++third) {
+                    // the jambel supports up to four modules, so we have to send four values
+                    // otherwise it will halt and wait for the fourth value
+                    commands[index++] = "set_all=" + first + "," + second + "," + third + ",0";
+                }
+            }
         }
-        if (response.isEmpty()) {
-            throw new JambelResponseException(
-                String.format("Received empty string, expected response for '%s'", command));
+        return commands;
+    }
+
+    private static String[][] buildSetModeCommands() {
+        final String[][] commands = new String[MAX_MODULE_ID][NUMBER_OF_MODES];
+        for (int moduleId = 1; moduleId <= MAX_MODULE_ID; ++moduleId) {
+            for (LightStatus mode : LightStatus.values()) {
+                try {
+                    commands[moduleId - 1][getStatusId(mode)] =
+                        SET_PREFIX + moduleId + "," + getStatusCommand(mode);
+                } catch (LookupException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return commands;
+    }
+
+    private String onForCommand(int moduleId, int milliSeconds) {
+        return SET_PREFIX + moduleId + "," + milliSeconds;
+    }
+
+    private String blinkTimeCommand(int moduleId, int msecOn, int msecOff) {
+        return BLINK_TIME_PREFIX + moduleId + "," + msecOn + "," + msecOff;
+    }
+
+    private RawModule rawModule(JambelModule module) {
+        if ((module != redModule) && (module != yellowModule) && (module != greenModule)) {
+            throw new IllegalArgumentException("The given module doesn't belong to this jambel");
+        }
+        return (RawModule) module;
+    }
+
+    private String sendCommandExpectResponse(String command) throws JambelException {
+        return sendCommandExpectResponse(link -> link.sendCommand(command), () -> command);
+    }
+
+    /**
+     * @param sender sends the command via the link
+     * @param command describes the command (only built for messages)
+     */
+    private String sendCommandExpectResponse(CommandSender sender, Supplier<String> command)
+        throws JambelException {
+        lock.lock();
+        try {
+            final String response = sender.send(commLink);
+            if (response == null) {
+                throw new JambelResponseException(
+                    String.format("Received null, expected response for '%s'", command.get()));
+            }
+            if (response.isEmpty()) {
+                throw new JambelResponseException(String.format(
+                    "Received empty string, expected response for '%s'", command.get()));
+            }
+            return response;
+        } finally {
+            lock.unlock();
         }
-        return response;
     }
 
     private void sendOkCommand(String command) throws JambelException {
-        final String response = sendCommandExpectResponse(command);
+        sendOkCommand(link -> link.sendCommand(command), () -> command);
+    }
+
+    private void sendOkCommand(CommandSender sender, Supplier<String> command)
+        throws JambelException {
+        final String response = sendCommandExpectResponse(sender, command);
+        if (!"OK".equals(response)) {
+            expectOk(command.get(), response);
+        }
+    }
+
+    /**
+     * Send a command which changes the state of the jambel and keep the shadow state up to date.
+     *
+     * @param command the command to send
+     * @param isUnchanged tells (from the shadow state) whether the command would change anything
+     * @param shadowUpdate applies the command to the shadow state after the jambel acknowledged it
+     */
+    private void sendWriteCommand(String command, BooleanSupplier isUnchanged,
+                                  Runnable shadowUpdate) throws JambelException {
+        sendWriteCommand(link -> link.sendCommand(command), () -> command, isUnchanged,
+            shadowUpdate);
+    }
+
+    /**
+     * Send a command with numeric arguments; the link encodes them without building
+     * the command string.
+     *
+     * @param sender sends the command via the link
+     * @param command describes the command (only built for messages)
+     * @see #sendWriteCommand(String, BooleanSupplier, Runnable)
+     */
+    private void sendWriteCommand(CommandSender sender, Supplier<String> command,
+                                  BooleanSupplier isUnchanged, Runnable shadowUpdate)
+        throws JambelException {
+        lock.lock();
+        try {
+            if (shadowStateEnabled && isUnchanged.getAsBoolean()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Skipping '{}'; the jambel is already in this state", command.get());
+                }
+                return;
+            }
+
+            try {
+                sendOkCommand(sender, command);
+            } catch (JambelException e) {
+                invalidateShadowState();
+                throw e;
+            } finally {
+                invalidateStatusCache();
+            }
+
+            if (shadowStateEnabled) {
+                shadowUpdate.run();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sendOkCommands(List<String> commands) throws JambelException {
+        lock.lock();
+        try {
+            final List<String> responses = commLink.sendCommands(commands);
+            if ((responses == null) || (responses.size() != commands.size())) {
+                throw new JambelResponseException(
+                    String.format("Expected %d responses for '%s'", commands.size(),
+                        String.join("; ", commands)));
+            }
+            for (int i = 0; i < commands.size(); ++i) {
+                expectOk(commands.get(i), responses.get(i));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void expectOk(String command, String response) throws JambelResponseException {
         if (!"OK".equals(response)) {
             throw new JambelResponseException(String.format("Received '%s', expected 'OK' for '%s'",
                     response, command));
         }
     }
 
+    /**
+     * A list of commands which are sent to the jambel via a single connection.
+     *
+     * @see RawJambel#batch()
+     */
+    public class Batch {
+        private final List<String> commands = new ArrayList<>();
+        private final List<Runnable> shadowUpdates = new ArrayList<>();
+
+        private Batch() {
+        }
+
+        public Batch reset() {
+            commands.add("reset");
+            shadowUpdates.add(RawJambel.this::invalidateShadowState);
+            return this;
+        }
+
+        public Batch setDefaultBlinkTimes(int msecOn, int msecOff) {
+            commands.add("blink_time_on=" + msecOn);
+            commands.add("blink_time_off=" + msecOff);
+            shadowUpdates.add(() -> shadowDefaultBlinkTimes = new BlinkTimes(msecOn, msecOff));
+            return this;
+        }
+
+        public Batch setAllLights(LightStatus redStatus, LightStatus yellowStatus,
+                                  LightStatus greenStatus) throws JambelException {
+            commands.add(setAllCommand(redStatus, yellowStatus, greenStatus));
+            shadowUpdates.add(() -> {
+                redModule.shadowMode = redStatus;
+                yellowModule.shadowMode = yellowStatus;
+                greenModule.shadowMode = greenStatus;
+            });
+            return this;
+        }
+
+        public Batch setMode(JambelModule module, LightStatus mode) throws JambelException {
+            final RawModule rawModule = rawModule(module);
+            commands.add(setModeCommand(rawModule.moduleId, mode));
+            shadowUpdates.add(() -> rawModule.shadowMode = mode);
+            return this;
+        }
+
+        public Batch on(JambelModule module, int milliSeconds) {
+            final RawModule rawModule = rawModule(module);
+            commands.add(onForCommand(rawModule.moduleId, milliSeconds));
+            shadowUpdates.add(() -> rawModule.shadowMode = null);
+            return this;
+        }
+
+        public Batch setBlinkTimes(JambelModule module, int msecOn, int msecOff) {
+            final RawModule rawModule = rawModule(module);
+            commands.add(blinkTimeCommand(rawModule.moduleId, msecOn, msecOff));
+            shadowUpdates.add(() -> rawModule.shadowBlinkTimes = new BlinkTimes(msecOn, msecOff));
+            return this;
+        }
+
+        /**
+         * Send all collected commands.
+         *
+         * @throws JambelException thrown in case the jambel couldn't be reached
+         *      or didn't acknowledge one of the commands
+         */
+        public void execute() throws JambelException {
+            lock.lock();
+            try {
+                try {
+                    sendOkCommands(commands);
+                } catch (JambelException e) {
+                    invalidateShadowState();
+                    throw e;
+                } finally {
+                    invalidateStatusCache();
+                }
+
+                if (shadowStateEnabled) {
+                    shadowUpdates.forEach(Runnable::run);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface CommandSender {
+        String send(JambelCommLink commLink) throws JambelException;
+    }
+
+    @Value
+    private static class BlinkTimes {
+        int msecOn;
+        int msecOff;
+    }
+
     private class RawModule implements JambelModule {
         @Getter
         private final int moduleId;
 
+        // guarded by lock; null means "unknown"
+        private LightStatus shadowMode = null;
+        private BlinkTimes shadowBlinkTimes = null;
+
         RawModule(int moduleId) {
             this.moduleId = moduleId;
         }
 
+        void invalidateShadowState() {
+            shadowMode = null;
+            shadowBlinkTimes = null;
+        }
+
         @Override
         public void on() throws JambelException {
             setMode(LightStatus.ON);
@@ -201,7 +708,10 @@ public class RawJambel implements Jambel {
 
         @Override
         public void on(int milliSeconds) throws JambelException {
-            sendOkCommand("set=" + moduleId + "," + milliSeconds);
+            // the light turns itself off later on; so its mode is unknown from now on
+            sendWriteCommand(link -> link.sendCommand(SET_PREFIX, moduleId, milliSeconds),
+                () -> onForCommand(moduleId, milliSeconds),
+                () -> false, () -> shadowMode = null);
         }
 
 
@@ -227,17 +737,17 @@ public class RawJambel implements Jambel {
 
         @Override
         public void setMode(Jambel.LightStatus mode) throws JambelException {
-            try {
-                final String modeName = getStatusCommand(mode);
-                sendOkCommand("set=" + moduleId + "," + modeName);
-            } catch (LookupException e) {
-                throw new JambelException(e.getMessage());
-            }
+            sendWriteCommand(setModeCommand(moduleId, mode),
+                () -> shadowMode == mode, () -> shadowMode = mode);
         }
 
         @Override
         public void setBlinkTimes(int msecOn, int msecOff) throws JambelException {
-            sendOkCommand("blink_time=" + moduleId + "," + msecOn + "," + msecOff);
+            sendWriteCommand(link -> link.sendCommand(BLINK_TIME_PREFIX, moduleId, msecOn, msecOff),
+                () -> blinkTimeCommand(moduleId, msecOn, msecOff),
+                () -> (shadowBlinkTimes != null) && (shadowBlinkTimes.getMsecOn() == msecOn)
+                    && (shadowBlinkTimes.getMsecOff() == msecOff),
+                () -> shadowBlinkTimes = new BlinkTimes(msecOn, msecOff));
         }
     }
 }
@@ -0,0 +1,7 @@
+package com.jambit.hlerchl.jambel.exceptions;
+
+public class JambelAdmissionException extends JambelException {
+    public JambelAdmissionException(String message) {
+        super(message);
+    }
+}
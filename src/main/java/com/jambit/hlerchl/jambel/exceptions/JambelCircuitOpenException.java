@@ -0,0 +1,7 @@
+package com.jambit.hlerchl.jambel.exceptions;
+
+public class JambelCircuitOpenException extends JambelException {
+    public JambelCircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.jambit.hlerchl.jambel.exceptions;
+
+public class JambelRateLimitException extends JambelException {
+    public JambelRateLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.jambit.hlerchl.jambel.exceptions;
+
+public class JambelTimeoutException extends JambelIoException {
+    public JambelTimeoutException(String message) {
+        super(message);
+    }
+}
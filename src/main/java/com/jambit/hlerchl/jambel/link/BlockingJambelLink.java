@@ -0,0 +1,869 @@
+package com.jambit.hlerchl.jambel.link;
+
+import com.jambit.hlerchl.jambel.entity.JambelCommLink;
+import com.jambit.hlerchl.jambel.entity.JambelExecutors;
+import com.jambit.hlerchl.jambel.exceptions.JambelAdmissionException;
+import com.jambit.hlerchl.jambel.exceptions.JambelConnectException;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import com.jambit.hlerchl.jambel.exceptions.JambelIoException;
+import com.jambit.hlerchl.jambel.exceptions.JambelRateLimitException;
+import com.jambit.hlerchl.jambel.exceptions.JambelTimeoutException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The session handling shared by the links which talk to the jambel via a
+ * blocking stream connection.
+ * <p>
+ * This covers the deadline and retries of each call, persistent and prepared
+ * connections, rate limiting, the {@link JambelConnectionAdmission connection admission}
+ * and the exchange of commands and responses. The subclasses only open and close
+ * the connection and hand out its streams.
+ * <p>
+ * The commands are encoded once per call and sent from the encoder's buffer
+ * (also when they are retried); commands with numeric arguments are encoded
+ * without building a string first.
+ */
+@Slf4j
+abstract class BlockingJambelLink implements JambelCommLink {
+    private static final int RECEIVE_BUFFER_SIZE = 128;
+    private static final int INITIAL_SEND_BUFFER_SIZE = 64;
+    private static final int DEFAULT_IDLE_TIMEOUT_MSEC = 5000;
+    private static final int DEFAULT_MAX_RATE_LIMIT_WAIT_MSEC = 5000;
+    private static final int DEFAULT_MAX_ADMISSION_WAIT_MSEC = 10000;
+    private static final int DEFAULT_COMMAND_TIMEOUT_MSEC = 10000;
+
+    final String hostname;
+    final int port;
+    private final ResponseBuffer receiveBuffer = new ResponseBuffer(RECEIVE_BUFFER_SIZE);
+    // guarded by lock; hold the commands and responses of the current call
+    private final CommandEncoder encoder = new CommandEncoder(INITIAL_SEND_BUFFER_SIZE);
+    private final List<String> responses = new ArrayList<>();
+    // used instead of a monitor: a virtual thread which waits for the jambel while
+    // holding a monitor would pin its carrier thread
+    final ReentrantLock lock = new ReentrantLock();
+
+    @Getter
+    private final RetrySettings retrySettings = new RetrySettings();
+
+    private int connectTimeoutMsec = 0;
+    @Getter
+    private int commandTimeoutMsec = DEFAULT_COMMAND_TIMEOUT_MSEC;
+    private long deadlineNanos = 0;
+
+    @Getter
+    private RttEstimator rttEstimator;
+    @Getter
+    private boolean adaptiveTimeouts = false;
+
+    @Getter
+    private boolean persistentConnection = false;
+    @Getter
+    private int idleTimeoutMsec = DEFAULT_IDLE_TIMEOUT_MSEC;
+    private ScheduledFuture<?> idleCloseTask = null;
+    // registered at the admission while the idle connection holds a session
+    private Runnable idleReleaseRequest = null;
+    private long numberOfSentCommands = 0;
+    @Getter
+    private boolean preConnect = false;
+
+    private JambelRateLimiter rateLimiter = null;
+    @Getter
+    private int maxRateLimitWaitMsec = DEFAULT_MAX_RATE_LIMIT_WAIT_MSEC;
+
+    @Getter
+    private JambelConnectionAdmission admission;
+    @Getter
+    private int maxAdmissionWaitMsec = DEFAULT_MAX_ADMISSION_WAIT_MSEC;
+    @Getter
+    private JambelAddressCache addressCache = null;
+    @Getter
+    private JambelProcessLock processLock = null;
+    private boolean admitted = false;
+
+    BlockingJambelLink(String hostname, int port) {
+        this.hostname = hostname;
+        this.port = port;
+        this.admission = JambelConnectionAdmission.forEndpoint(hostname, port);
+        this.rttEstimator = RttEstimator.forEndpoint(hostname, port);
+    }
+
+    /**
+     * Open the connection to the jambel (the session was already admitted).
+     *
+     * @param cachedAddress the address to connect to or {@code null} to resolve the host name
+     * @param timeoutMsec how long connecting may take at most
+     */
+    abstract void openConnection(InetAddress cachedAddress, int timeoutMsec) throws IOException;
+
+    /**
+     * Close the connection; also called if it isn't (completely) open.
+     */
+    abstract void closeConnection() throws IOException;
+
+    abstract boolean isConnected();
+
+    abstract OutputStream getOutputStream() throws IOException;
+
+    abstract InputStream getInputStream() throws IOException;
+
+    /**
+     * Bound the next blocking read of the connected {@link #getInputStream() stream}.
+     */
+    abstract void setReadTimeout(int milliSeconds) throws IOException;
+
+    @Override
+    public void setConnectTimeout(int milliSeconds) {
+        lock.lock();
+        try {
+            connectTimeoutMsec = milliSeconds;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getEndpoint() {
+        return hostname + ":" + port;
+    }
+
+    /**
+     * Set how long sending commands may take at most.
+     * <p>
+     * The time covers connecting, writing the commands, reading the responses and
+     * all retries in between. If it expires, sending fails with a
+     * {@link JambelTimeoutException}. Waiting for a rate limit token or a free
+     * session doesn't count.
+     *
+     * @param milliSeconds the deadline for each call of {@link #sendCommands}
+     */
+    public void setCommandTimeoutMsec(int milliSeconds) {
+        lock.lock();
+        try {
+            this.commandTimeoutMsec = milliSeconds;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Derive the timeouts from the measured round-trip times to the jambel.
+     * <p>
+     * The link always measures how long the jambel takes to answer (see
+     * {@code getRttEstimator()}). With adaptive timeouts the link uses the
+     * {@link RttEstimator#getTimeoutMsec() derived timeout} instead of the
+     * {@link #setConnectTimeout connect timeout} and additionally as read timeout
+     * for each response. Retries wait at least the
+     * {@link RttEstimator#getRetryDelayMsec() derived retry delay}. The
+     * {@link #setCommandTimeoutMsec command timeout} still bounds the whole call.
+     *
+     * @param adaptiveTimeouts {@code true} to derive the timeouts from measurements
+     */
+    public void setAdaptiveTimeouts(boolean adaptiveTimeouts) {
+        lock.lock();
+        try {
+            this.adaptiveTimeouts = adaptiveTimeouts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replace the estimator which measures the round-trip times to the jambel.
+     * <p>
+     * By default all links to the same host and port share
+     * {@link RttEstimator#forEndpoint one estimator}.
+     *
+     * @param rttEstimator the estimator to feed and to take the timeouts from
+     */
+    public void setRttEstimator(RttEstimator rttEstimator) {
+        lock.lock();
+        try {
+            this.rttEstimator = rttEstimator;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retry failed commands up to the given number of times with a fixed delay.
+     * <p>
+     * Use {@code getRetrySettings()} for other retry policies.
+     *
+     * @param numberOfConnectRetries how often to retry at most
+     */
+    public void setNumberOfConnectRetries(int numberOfConnectRetries) {
+        retrySettings.setNumberOfRetries(numberOfConnectRetries);
+    }
+
+    /**
+     * Retry failed commands after a fixed delay.
+     * <p>
+     * Use {@code getRetrySettings()} for other retry policies.
+     *
+     * @param msecUntilRetry the delay before each retry in milliseconds
+     */
+    public void setMsecUntilRetry(int msecUntilRetry) {
+        retrySettings.setMsecUntilRetry(msecUntilRetry);
+    }
+
+    /**
+     * Switch between "one connection per command" and "one connection for many commands".
+     * <p>
+     * By default each command is sent via its own connection which is closed
+     * right after the response was received. This is slow but it is the most
+     * robust way to talk to the brittle IP stack of the jambel.
+     * <p>
+     * With a persistent connection the link connects on the first command and keeps
+     * the connection open for the following ones. The connection is closed after it
+     * was idle for {@link #setIdleTimeoutMsec(int) some time}, or as soon as another
+     * link waits for a session of the {@link #setAdmission admission}. If the jambel
+     * dropped the connection in the meantime, the link reconnects and sends the
+     * command again.
+     *
+     * @param persistentConnection {@code true} to keep the connection open between commands
+     */
+    public void setPersistentConnection(boolean persistentConnection) {
+        lock.lock();
+        try {
+            this.persistentConnection = persistentConnection;
+            if (!persistentConnection) {
+                close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Keep a connection to the jambel open in advance (for the next command).
+     * <p>
+     * Each command is still sent via its own connection which is closed after the
+     * response was received. But the link immediately opens the connection for the
+     * next command in the background, so the next command doesn't wait for the TCP
+     * handshake. This helps alerts which have to show up without delay.
+     * <p>
+     * The waiting connection occupies a session of the jambel. So it is only opened
+     * if the {@link #setAdmission admission} grants a session right away and no
+     * other link waits for one; it is closed after the
+     * {@link #setIdleTimeoutMsec(int) idle timeout} or as soon as another link waits
+     * for a session. If the jambel drops it in the meantime, the next command
+     * notices and connects again.
+     *
+     * @param preConnect {@code true} to keep a connection ready for the next command
+     */
+    public void setPreConnect(boolean preConnect) {
+        lock.lock();
+        try {
+            this.preConnect = preConnect;
+            if (preConnect) {
+                schedulePreConnect();
+            } else {
+                close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set how long an unused persistent connection is kept open.
+     *
+     * @param milliSeconds idle time in milliseconds after which the connection is closed
+     */
+    public void setIdleTimeoutMsec(int milliSeconds) {
+        lock.lock();
+        try {
+            this.idleTimeoutMsec = milliSeconds;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pace the commands sent via this link.
+     * <p>
+     * Before each attempt to send commands (including retries) the link takes a
+     * token from the given limiter. Share the limiter between all links talking
+     * to the same jambel (see {@link JambelRateLimiter#forHost}).
+     *
+     * @param rateLimiter the limiter to use or {@code null} to send without limit
+     */
+    public void setRateLimiter(JambelRateLimiter rateLimiter) {
+        lock.lock();
+        try {
+            this.rateLimiter = rateLimiter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set how long to wait for a token of the {@link #setRateLimiter rate limiter}.
+     * <p>
+     * If no token becomes available within this time, sending fails with a
+     * {@link JambelRateLimitException}. With {@code 0} the link fails fast.
+     *
+     * @param milliSeconds how long to wait for a token at most
+     */
+    public void setMaxRateLimitWaitMsec(int milliSeconds) {
+        lock.lock();
+        try {
+            this.maxRateLimitWaitMsec = milliSeconds;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replace the admission which limits the concurrent sessions to the jambel.
+     * <p>
+     * By default all links to the same host and port share
+     * {@link JambelConnectionAdmission#forEndpoint one admission}.
+     *
+     * @param admission the admission to take a session from
+     */
+    public void setAdmission(JambelConnectionAdmission admission) {
+        lock.lock();
+        try {
+            close();
+            this.admission = admission;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Connect to a cached address instead of resolving the host name on each connect.
+     *
+     * @param addressCache the cache to take the address from (usually
+     *      {@link JambelAddressCache#forHost} or {@link JambelAddressCache#pinned})
+     *      or {@code null} to resolve the host name each time
+     */
+    public void setAddressCache(JambelAddressCache addressCache) {
+        lock.lock();
+        try {
+            this.addressCache = addressCache;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set how long to wait until the jambel accepts another session.
+     * <p>
+     * If other links keep all sessions busy for longer than this, sending fails
+     * with a {@link JambelAdmissionException}.
+     *
+     * @param milliSeconds how long to wait for a session at most
+     */
+    public void setMaxAdmissionWaitMsec(int milliSeconds) {
+        lock.lock();
+        try {
+            this.maxAdmissionWaitMsec = milliSeconds;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Additionally serialize the sessions to the jambel with other processes.
+     * <p>
+     * All processes on this machine which use a lock for the same jambel in the
+     * same directory take turns. The lock is held as long as the session (so a
+     * {@link #setPersistentConnection persistent connection} should use a short
+     * idle timeout). Waiting for the lock counts against the
+     * {@link #setMaxAdmissionWaitMsec admission wait time}.
+     *
+     * @param processLock the lock to take or {@code null} to coordinate within this JVM only
+     * @see JambelProcessLock#forEndpoint
+     */
+    public void setProcessLock(JambelProcessLock processLock) {
+        lock.lock();
+        try {
+            close();
+            this.processLock = processLock;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close a (persistent) connection to the jambel if there is one.
+     * <p>
+     * The link stays usable; the next command will connect again.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            cancelIdleClose();
+            if (isConnected()) {
+                disconnectQuietly();
+            } else {
+                // the jambel might have dropped the connection on its own
+                releaseAdmission();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String sendCommand(String command) throws JambelException {
+        lock.lock();
+        try {
+            encoder.encode(command);
+            send(RetryPolicy.CommandClass.of(command), 1);
+            return responses.get(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String sendCommand(String prefix, int moduleId, int value) throws JambelException {
+        lock.lock();
+        try {
+            encoder.encode(prefix, moduleId, value);
+            send(RetryPolicy.CommandClass.WRITE, 1);
+            return responses.get(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String sendCommand(String prefix, int moduleId, int firstValue, int secondValue)
+        throws JambelException {
+        lock.lock();
+        try {
+            encoder.encode(prefix, moduleId, firstValue, secondValue);
+            send(RetryPolicy.CommandClass.WRITE, 1);
+            return responses.get(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send several commands via a single connection.
+     * <p>
+     * All commands are written at once and the responses are read afterwards
+     * (in the same order). So the whole batch costs only one connection setup.
+     *
+     * @param commands the commands to send
+     * @return the responses to the given commands (in the same order)
+     * @throws JambelException thrown in case the jambel couldn't be reached
+     *      or behaved unexpectedly
+     */
+    @Override
+    public List<String> sendCommands(List<String> commands) throws JambelException {
+        lock.lock();
+        try {
+            if (commands.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            encoder.encode(commands);
+            send(RetryPolicy.CommandClass.of(commands), commands.size());
+            return new ArrayList<>(responses);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send the commands which were just encoded and collect their responses.
+     */
+    private void send(RetryPolicy.CommandClass commandClass, int numberOfCommands)
+        throws JambelException {
+        retrySettings.recordRequest();
+        int retryNr = 0;
+        long retryDelayMsec = 0;
+
+        for (; ; ) {
+            final long tokenStart = System.nanoTime();
+            acquireToken();
+            if (retryNr == 0) {
+                deadlineNanos =
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commandTimeoutMsec);
+            } else {
+                // like waiting for admission, waiting for a token doesn't count
+                deadlineNanos += System.nanoTime() - tokenStart;
+            }
+            try {
+                if (persistentConnection) {
+                    sendViaPersistentConnection(numberOfCommands);
+                } else if (preConnect) {
+                    sendViaPreparedConnection(numberOfCommands);
+                } else {
+                    connectAndSend(numberOfCommands);
+                }
+                return;
+            } catch (JambelConnectException | JambelIoException e) {
+                retryDelayMsec =
+                    retrySettings.nextDelay(commandClass, e, ++retryNr, retryDelayMsec);
+                if (adaptiveTimeouts && (retryDelayMsec >= 0)) {
+                    retryDelayMsec = Math.max(retryDelayMsec, rttEstimator.getRetryDelayMsec());
+                }
+                final boolean deadlineExpires = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(retryDelayMsec) >= deadlineNanos;
+                if ((retryDelayMsec < 0) || deadlineExpires) {
+                    if (e instanceof JambelConnectException) {
+                        throw new JambelConnectException(String.format("While sending '%s': %s",
+                            encoder.describe(), e.getMessage()));
+                    }
+                    throw e;
+                }
+                log.debug("{}: retrying in {} msec after '{}'", hostname, retryDelayMsec,
+                    e.getMessage());
+                try {
+                    Thread.sleep(retryDelayMsec);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new JambelException("Got interrupted while waiting for next connect");
+                }
+            }
+        }
+    }
+
+    private void acquireToken() throws JambelException {
+        if (rateLimiter == null) {
+            return;
+        }
+        try {
+            if (!rateLimiter.tryAcquire(maxRateLimitWaitMsec)) {
+                throw new JambelRateLimitException(String.format(
+                    "Rate limit for '%s' exceeded while sending '%s'", hostname,
+                    encoder.describe()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JambelException("Got interrupted while waiting for the rate limit");
+        }
+    }
+
+    private void connectAndSend(int numberOfCommands) throws JambelException {
+        try {
+            connect();
+            try {
+                exchange(numberOfCommands);
+            } finally {
+                disconnect();
+            }
+        } catch (IOException ioex) {
+            throw translateException(ioex);
+        }
+    }
+
+    private void sendViaPersistentConnection(int numberOfCommands) throws JambelException {
+        cancelIdleClose();
+        ++numberOfSentCommands;
+        try {
+            sendViaOpenConnection(numberOfCommands);
+        } catch (IOException ioex) {
+            disconnectQuietly();
+            throw translateException(ioex);
+        } finally {
+            scheduleIdleClose();
+        }
+    }
+
+    private void sendViaPreparedConnection(int numberOfCommands) throws JambelException {
+        cancelIdleClose();
+        ++numberOfSentCommands;
+        try {
+            sendViaOpenConnection(numberOfCommands);
+        } catch (IOException ioex) {
+            throw translateException(ioex);
+        } finally {
+            disconnectQuietly();
+            schedulePreConnect();
+        }
+    }
+
+    private void sendViaOpenConnection(int numberOfCommands)
+        throws IOException, JambelException {
+        if (isConnected()) {
+            try {
+                exchange(numberOfCommands);
+                return;
+            } catch (IOException ioex) {
+                // most probably the jambel dropped the idle connection; so try a fresh one
+                log.debug("{}: open connection broke ('{}'); reconnecting",
+                    hostname, ioex.getMessage());
+                disconnectQuietly();
+            }
+        }
+
+        connect();
+        exchange(numberOfCommands);
+    }
+
+    private void schedulePreConnect() {
+        try {
+            JambelExecutors.defaultExecutor().execute(this::preConnect);
+        } catch (RejectedExecutionException e) {
+            log.debug("{}: not connecting in advance ({})", hostname, e.getMessage());
+        }
+    }
+
+    private void preConnect() {
+        lock.lock();
+        try {
+            if (!preConnect || isConnected() || admitted) {
+                return;
+            }
+            if (admission.hasWaitingLinks()) {
+                // the session is needed for real commands of other links
+                return;
+            }
+
+            deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commandTimeoutMsec);
+            try {
+                if (!tryAdmit(0)) {
+                    return;
+                }
+                connect();
+                log.debug("{}: connected in advance", hostname);
+                scheduleIdleClose();
+            } catch (IOException | JambelException e) {
+                log.debug("{}: connecting in advance failed ('{}')", hostname, e.getMessage());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void connect() throws IOException, JambelException {
+        final long admitStart = System.nanoTime();
+        admit();
+        // waiting for our turn doesn't count against the command deadline
+        deadlineNanos += System.nanoTime() - admitStart;
+        try {
+            receiveBuffer.clear();
+            final int remainingMsec = remainingMsec();
+            final int timeoutMsec = adaptiveTimeouts
+                ? rttEstimator.getTimeoutMsec()
+                : connectTimeoutMsec;
+            openConnection((addressCache != null) ? addressCache.resolve() : null,
+                (timeoutMsec > 0) ? Math.min(timeoutMsec, remainingMsec) : remainingMsec);
+        } catch (IOException | RuntimeException e) {
+            releaseAdmission();
+            throw e;
+        }
+    }
+
+    private void disconnect() throws IOException {
+        try {
+            closeConnection();
+        } finally {
+            releaseAdmission();
+        }
+    }
+
+    private void admit() throws JambelException {
+        if (!tryAdmit(maxAdmissionWaitMsec)) {
+            throw new JambelAdmissionException(String.format(
+                "No free session at '%s' within %d msec", admission.getEndpoint(),
+                maxAdmissionWaitMsec));
+        }
+    }
+
+    private boolean tryAdmit(long maxWaitMsec) throws JambelException {
+        if (admitted) {
+            return true;
+        }
+        final long start = System.nanoTime();
+        try {
+            if (!admission.tryAcquire(maxWaitMsec)) {
+                return false;
+            }
+            if (processLock != null) {
+                lockOtherProcesses(maxWaitMsec,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JambelException("Got interrupted while waiting for a free session");
+        }
+        admitted = true;
+        return true;
+    }
+
+    private void lockOtherProcesses(long maxWaitMsec, long msecWaitedSoFar)
+        throws JambelException, InterruptedException {
+        boolean locked = false;
+        try {
+            locked = processLock.tryLock(Math.max(0, maxWaitMsec - msecWaitedSoFar));
+        } catch (IOException ioex) {
+            throw new JambelIoException(String.format("Got '%s' while locking '%s'",
+                ioex.getMessage(), processLock.getLockFile()));
+        } finally {
+            if (!locked) {
+                admission.release();
+            }
+        }
+        if (!locked) {
+            throw new JambelAdmissionException(String.format(
+                "'%s' is used by another process for more than %d msec",
+                admission.getEndpoint(), maxWaitMsec));
+        }
+    }
+
+    private void releaseAdmission() {
+        if (admitted) {
+            admitted = false;
+            if (processLock != null) {
+                processLock.unlock();
+            }
+            admission.release();
+        }
+    }
+
+    /**
+     * @return the time left until the deadline of the current call (at least 1 msec)
+     * @throws SocketTimeoutException thrown in case the deadline already expired
+     */
+    private int remainingMsec() throws SocketTimeoutException {
+        final long remainingNanos = deadlineNanos - System.nanoTime();
+        if (remainingNanos <= 0) {
+            throw new SocketTimeoutException(
+                String.format("No response within %d msec", commandTimeoutMsec));
+        }
+        return (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+    }
+
+    private JambelException translateException(IOException ioex) {
+        final String command = encoder.describe();
+        if (ioex instanceof SocketTimeoutException) {
+            rttEstimator.recordTimeout();
+            return new JambelTimeoutException(
+                String.format("Timed out ('%s') while sending '%s'", ioex.getMessage(), command));
+        }
+        if (ioex instanceof ConnectException) {
+            return new JambelConnectException(
+                String.format("Got '%s' while sending '%s'", ioex.getMessage(), command));
+        }
+        if (ioex instanceof UnknownHostException) {
+            return new JambelConnectException("Unknown host. Check if '" + hostname +
+                                              "' is the correct name and if it's online");
+        }
+        return new JambelIoException(
+            String.format("Got '%s' while sending '%s'", ioex.getMessage(), command));
+    }
+
+    private void disconnectQuietly() {
+        try {
+            disconnect();
+        } catch (IOException e) {
+            log.debug("{}: ignoring '{}' while disconnecting", hostname, e.getMessage());
+        }
+    }
+
+    private void scheduleIdleClose() {
+        if ((persistentConnection || preConnect) && isConnected()) {
+            final long commandsWhenScheduled = numberOfSentCommands;
+            idleCloseTask = LinkTimer.get().schedule(
+                () -> closeIdleConnection(commandsWhenScheduled),
+                idleTimeoutMsec, TimeUnit.MILLISECONDS);
+            // an idle connection must never keep real commands of other links waiting
+            idleReleaseRequest = () -> LinkTimer.get().execute(
+                () -> closeIdleConnection(commandsWhenScheduled));
+            admission.addIdleHolder(idleReleaseRequest);
+            if (admission.hasWaitingLinks()) {
+                log.debug("{}: another link waits for a session; closing the connection",
+                    hostname);
+                cancelIdleClose();
+                disconnectQuietly();
+            }
+        }
+    }
+
+    private void cancelIdleClose() {
+        if (idleCloseTask != null) {
+            idleCloseTask.cancel(false);
+            idleCloseTask = null;
+        }
+        if (idleReleaseRequest != null) {
+            admission.removeIdleHolder(idleReleaseRequest);
+            idleReleaseRequest = null;
+        }
+    }
+
+    private void closeIdleConnection(long commandsWhenScheduled) {
+        lock.lock();
+        try {
+            // a command might have been sent between firing and acquiring the lock
+            if (commandsWhenScheduled == numberOfSentCommands) {
+                cancelIdleClose();
+                if (isConnected()) {
+                    log.debug("{}: closing idle connection", hostname);
+                    disconnectQuietly();
+                } else {
+                    releaseAdmission();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the encoded commands and read their responses into {@link #responses}.
+     */
+    private void exchange(int numberOfCommands) throws IOException {
+        final OutputStream out = getOutputStream();
+        if (log.isDebugEnabled()) {
+            log.debug("{}: Sending '{}' ... ", hostname, encoder.describe());
+        }
+        out.write(encoder.getBuffer(), 0, encoder.getLength());
+        out.flush();
+        final long sentNanos = System.nanoTime();
+
+        final InputStream in = getInputStream();
+        responses.clear();
+        responses.add(readResponse(in));
+        // the following responses only measure how fast the jambel works off the commands
+        rttEstimator.addSample(System.nanoTime() - sentNanos);
+        while (responses.size() < numberOfCommands) {
+            responses.add(readResponse(in));
+        }
+    }
+
+    private String readResponse(InputStream in) throws IOException {
+        for (; ; ) {
+            final String response = receiveBuffer.nextResponse();
+            if (response != null) {
+                log.debug("{}: received response '{}'", hostname, response);
+                return response;
+            }
+
+            // the connection is open; so this bounds the blocking read below
+            setReadTimeout(adaptiveTimeouts
+                ? Math.min(rttEstimator.getTimeoutMsec(), remainingMsec())
+                : remainingMsec());
+            if (receiveBuffer.readFrom(in) < 0) {
+                // the telnet stream reports a timeout as end of stream and throws the
+                // SocketTimeoutException only on the next read
+                receiveBuffer.readFrom(in);
+                throw new IOException("Connection closed by jambel");
+            }
+        }
+    }
+}
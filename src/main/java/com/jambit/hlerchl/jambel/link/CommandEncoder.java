@@ -0,0 +1,174 @@
+package com.jambit.hlerchl.jambel.link;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes commands into a reusable buffer as they go over the wire.
+ * <p>
+ * The jambel speaks CRLF terminated ASCII lines. The commands are copied char by
+ * char (trailing CRLFs are dropped, non-ASCII chars become {@code '?'}); numeric
+ * arguments are written digit by digit. So once the buffer is large enough,
+ * encoding doesn't allocate anything.
+ */
+class CommandEncoder {
+    // "-2147483648,"
+    private static final int MAX_INT_LENGTH = 12;
+
+    private byte[] buffer;
+    private int length = 0;
+
+    CommandEncoder(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Encode the commands (each terminated by CRLF) into the buffer.
+     *
+     * @param commands the commands to encode
+     * @return the number of bytes to send from {@link #getBuffer()}
+     */
+    int encode(List<String> commands) {
+        final int numberOfCommands = commands.size();
+        int requiredLength = 0;
+        for (int i = 0; i < numberOfCommands; ++i) {
+            requiredLength += lengthWithoutCrLf(commands.get(i)) + 2;
+        }
+        ensureCapacity(requiredLength);
+
+        length = 0;
+        for (int i = 0; i < numberOfCommands; ++i) {
+            putCommand(commands.get(i));
+        }
+        return length;
+    }
+
+    /**
+     * Encode a single command (terminated by CRLF) into the buffer.
+     *
+     * @param command the command to encode
+     * @return the number of bytes to send from {@link #getBuffer()}
+     */
+    int encode(String command) {
+        ensureCapacity(lengthWithoutCrLf(command) + 2);
+        length = 0;
+        putCommand(command);
+        return length;
+    }
+
+    /**
+     * Encode the command {@code <prefix><moduleId>,<value>} (terminated by CRLF)
+     * into the buffer.
+     *
+     * @return the number of bytes to send from {@link #getBuffer()}
+     */
+    int encode(String prefix, int moduleId, int value) {
+        ensureCapacity(prefix.length() + 2 * MAX_INT_LENGTH + 2);
+        length = 0;
+        putChars(prefix, prefix.length());
+        putInt(moduleId);
+        buffer[length++] = ',';
+        putInt(value);
+        putCrLf();
+        return length;
+    }
+
+    /**
+     * Encode the command {@code <prefix><moduleId>,<firstValue>,<secondValue>}
+     * (terminated by CRLF) into the buffer.
+     *
+     * @return the number of bytes to send from {@link #getBuffer()}
+     */
+    int encode(String prefix, int moduleId, int firstValue, int secondValue) {
+        ensureCapacity(prefix.length() + 3 * MAX_INT_LENGTH + 2);
+        length = 0;
+        putChars(prefix, prefix.length());
+        putInt(moduleId);
+        buffer[length++] = ',';
+        putInt(firstValue);
+        buffer[length++] = ',';
+        putInt(secondValue);
+        putCrLf();
+        return length;
+    }
+
+    /**
+     * @return the buffer filled by the last call of {@link #encode}
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the number of bytes written by the last call of {@link #encode}
+     */
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the commands encoded by the last call of {@link #encode} (only for
+     *      messages; several commands are separated by "; ")
+     */
+    String describe() {
+        final String commands = new String(buffer, 0, Math.max(0, length - 2),
+            StandardCharsets.US_ASCII);
+        return commands.replace("\r\n", "; ");
+    }
+
+    /**
+     * @param command a command which might already end with CRLF
+     * @return the length of the command without its trailing CRLFs
+     */
+    static int lengthWithoutCrLf(String command) {
+        int length = command.length();
+        while ((length >= 2) && (command.charAt(length - 2) == '\r')
+                && (command.charAt(length - 1) == '\n')) {
+            length -= 2;
+        }
+        return length;
+    }
+
+    private void ensureCapacity(int requiredLength) {
+        if (requiredLength > buffer.length) {
+            buffer = new byte[Math.max(requiredLength, 2 * buffer.length)];
+        }
+    }
+
+    private void putCommand(String command) {
+        putChars(command, lengthWithoutCrLf(command));
+        putCrLf();
+    }
+
+    private void putChars(String chars, int numberOfChars) {
+        for (int i = 0; i < numberOfChars; ++i) {
+            final char c = chars.charAt(i);
+            buffer[length++] = (c < 0x80) ? (byte) c : (byte) '?';
+        }
+    }
+
+    private void putInt(int value) {
+        // work with the negative value; -Integer.MIN_VALUE doesn't fit into an int
+        int remaining = value;
+        if (remaining < 0) {
+            buffer[length++] = '-';
+        } else {
+            remaining = -remaining;
+        }
+
+        int numberOfDigits = 1;
+        for (int limit = -10; (remaining <= limit) && (numberOfDigits < 10); limit *= 10) {
+            ++numberOfDigits;
+        }
+        for (int pos = length + numberOfDigits - 1; pos >= length; --pos) {
+            buffer[pos] = (byte) ('0' - (remaining % 10));
+            remaining /= 10;
+        }
+        length += numberOfDigits;
+    }
+
+    private void putCrLf() {
+        buffer[length++] = '\r';
+        buffer[length++] = '\n';
+    }
+}
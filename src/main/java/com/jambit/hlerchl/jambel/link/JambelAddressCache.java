@@ -0,0 +1,219 @@
+package com.jambit.hlerchl.jambel.link;
+
+import com.jambit.hlerchl.jambel.entity.JambelExecutors;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the address of a jambel so that not every connect waits for the resolver.
+ * <p>
+ * A resolved address is used for {@code ttlMsec}. If it is asked for within the last
+ * {@code refreshAheadMsec} of that time, it is resolved again in the background
+ * while the caller continues with the cached address. Once the address expired it
+ * is resolved right away; if that fails, the last known address is used (and the
+ * lookup is repeated on the next connect).
+ * <p>
+ * All links to the same host share one cache (see {@link #forHost}). A
+ * {@link #pinned pinned} cache never asks the resolver at all.
+ */
+@Slf4j
+public class JambelAddressCache {
+    private static final long DEFAULT_TTL_MSEC = 60000;
+    private static final long DEFAULT_REFRESH_AHEAD_MSEC = 10000;
+
+    private static final Map<String, JambelAddressCache> HOSTS = new ConcurrentHashMap<>();
+
+    /**
+     * Looks up the address of a host (usually via {@link InetAddress#getByName}).
+     */
+    interface Resolver {
+        InetAddress resolve(String hostname) throws UnknownHostException;
+    }
+
+    @Getter
+    private final String hostname;
+    private final Resolver resolver;
+    private final Executor refreshExecutor;
+    private final boolean pinned;
+
+    // guarded by this
+    private long ttlMsec = DEFAULT_TTL_MSEC;
+    private long refreshAheadMsec = DEFAULT_REFRESH_AHEAD_MSEC;
+    private InetAddress address = null;
+    private long resolvedNanos = 0;
+    private boolean refreshing = false;
+    private long numberOfLookups = 0;
+    private long numberOfFailedLookups = 0;
+
+    JambelAddressCache(String hostname, Resolver resolver, Executor refreshExecutor) {
+        this.hostname = hostname;
+        this.resolver = resolver;
+        this.refreshExecutor = refreshExecutor;
+        this.pinned = false;
+    }
+
+    private JambelAddressCache(InetAddress address) {
+        this.hostname = address.getHostAddress();
+        this.resolver = null;
+        this.refreshExecutor = null;
+        this.pinned = true;
+        this.address = address;
+    }
+
+    /**
+     * Get the cache shared by all links to the given host.
+     *
+     * @param hostname the name or address of the jambel
+     * @return the cache for the given host
+     */
+    public static JambelAddressCache forHost(String hostname) {
+        return HOSTS.computeIfAbsent(hostname, name -> new JambelAddressCache(name,
+            InetAddress::getByName, JambelExecutors.defaultExecutor()));
+    }
+
+    /**
+     * Get a cache which always returns the given address.
+     * <p>
+     * Use it for jambels with a fixed IP address to take the resolver out of the
+     * picture completely.
+     *
+     * @param ipAddress an IP address literal like {@code "192.168.1.17"}
+     * @return a cache which never resolves anything
+     * @throws IllegalArgumentException thrown in case the given string isn't an IP address
+     */
+    public static JambelAddressCache pinned(String ipAddress) {
+        if (!isIpLiteral(ipAddress)) {
+            throw new IllegalArgumentException("'" + ipAddress + "' isn't an IP address");
+        }
+        try {
+            // an IP literal is only parsed; the resolver isn't asked
+            return new JambelAddressCache(InetAddress.getByName(ipAddress));
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("'" + ipAddress + "' isn't an IP address");
+        }
+    }
+
+    /**
+     * @param milliSeconds how long a resolved address is used
+     */
+    public synchronized void setTtlMsec(long milliSeconds) {
+        this.ttlMsec = milliSeconds;
+    }
+
+    /**
+     * @param milliSeconds how long before the expiry the address is refreshed in the
+     *      background ({@code 0} to resolve only after the expiry)
+     */
+    public synchronized void setRefreshAheadMsec(long milliSeconds) {
+        this.refreshAheadMsec = milliSeconds;
+    }
+
+    /**
+     * Get the address of the host.
+     *
+     * @return the cached or freshly resolved address
+     * @throws UnknownHostException thrown in case the host was never resolved successfully
+     */
+    public InetAddress resolve() throws UnknownHostException {
+        final InetAddress knownAddress;
+        synchronized (this) {
+            if (pinned) {
+                return address;
+            }
+            if (address != null) {
+                final long ageMsec =
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resolvedNanos);
+                if (ageMsec < ttlMsec) {
+                    if ((ageMsec >= ttlMsec - refreshAheadMsec) && !refreshing) {
+                        refreshing = true;
+                        startRefresh();
+                    }
+                    return address;
+                }
+            }
+            knownAddress = address;
+        }
+
+        try {
+            return lookup();
+        } catch (UnknownHostException e) {
+            if (knownAddress == null) {
+                throw e;
+            }
+            log.warn("Resolving '{}' failed ({}); using last known address {}", hostname,
+                e.getMessage(), knownAddress.getHostAddress());
+            return knownAddress;
+        }
+    }
+
+    /**
+     * @return how often the resolver was asked so far
+     */
+    public synchronized long getNumberOfLookups() {
+        return numberOfLookups;
+    }
+
+    /**
+     * @return how often the resolver failed so far
+     */
+    public synchronized long getNumberOfFailedLookups() {
+        return numberOfFailedLookups;
+    }
+
+    private void startRefresh() {
+        try {
+            refreshExecutor.execute(this::refresh);
+        } catch (RejectedExecutionException e) {
+            refreshing = false;
+        }
+    }
+
+    private void refresh() {
+        try {
+            lookup();
+        } catch (UnknownHostException e) {
+            log.debug("Refreshing '{}' failed ({}); keeping the known address", hostname,
+                e.getMessage());
+        } finally {
+            synchronized (this) {
+                refreshing = false;
+            }
+        }
+    }
+
+    private InetAddress lookup() throws UnknownHostException {
+        final InetAddress newAddress;
+        try {
+            newAddress = resolver.resolve(hostname);
+        } catch (UnknownHostException e) {
+            synchronized (this) {
+                ++numberOfLookups;
+                ++numberOfFailedLookups;
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            ++numberOfLookups;
+            if ((address != null) && !address.equals(newAddress)) {
+                log.info("Address of '{}' changed from {} to {}", hostname,
+                    address.getHostAddress(), newAddress.getHostAddress());
+            }
+            address = newAddress;
+            resolvedNanos = System.nanoTime();
+        }
+        return newAddress;
+    }
+
+    private static boolean isIpLiteral(String host) {
+        return host.matches("\\d{1,3}(\\.\\d{1,3}){3}") || (host.indexOf(':') >= 0);
+    }
+}
@@ -0,0 +1,248 @@
+package com.jambit.hlerchl.jambel.link;
+
+import com.jambit.hlerchl.jambel.entity.JambelCommLink;
+import com.jambit.hlerchl.jambel.entity.JambelExecutors;
+import com.jambit.hlerchl.jambel.exceptions.JambelCircuitOpenException;
+import com.jambit.hlerchl.jambel.exceptions.JambelConnectException;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import com.jambit.hlerchl.jambel.exceptions.JambelIoException;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A link which stops talking to a jambel that seems to be down.
+ * <p>
+ * After {@code failureThreshold} consecutive connect or I/O failures the breaker
+ * "opens": all commands fail right away with a {@link JambelCircuitOpenException}
+ * instead of waiting for timeouts and retries. After a delay the breaker sends a
+ * single {@code test} command ("half open"). If the jambel answers, the breaker
+ * closes again; otherwise it stays open and the delay until the next probe doubles
+ * (up to {@code maxProbeDelayMsec}).
+ * <p>
+ * Listeners are told about each change of the state.
+ */
+@Slf4j
+public class JambelCircuitBreaker implements JambelCommLink {
+    private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    private static final int DEFAULT_INITIAL_PROBE_DELAY_MSEC = 1000;
+    private static final int DEFAULT_MAX_PROBE_DELAY_MSEC = 60000;
+
+    public enum State {
+        /**
+         * Commands are passed to the jambel.
+         */
+        CLOSED,
+        /**
+         * The jambel seems to be down; commands fail right away.
+         */
+        OPEN,
+        /**
+         * A probe is on its way to find out whether the jambel is back.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Gets notified when the breaker changes its state.
+     */
+    public interface StateListener {
+        void stateChanged(JambelCircuitBreaker breaker, State oldState, State newState);
+    }
+
+    private final JambelCommLink link;
+    private final Executor probeExecutor;
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Setter
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    @Setter
+    private volatile int initialProbeDelayMsec = DEFAULT_INITIAL_PROBE_DELAY_MSEC;
+    @Setter
+    private volatile int maxProbeDelayMsec = DEFAULT_MAX_PROBE_DELAY_MSEC;
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long probeDelayMsec = 0;
+    private ScheduledFuture<?> probeTask = null;
+
+    /**
+     * @param link the link to protect
+     * @param probeExecutor runs the probes (which block while talking to the jambel)
+     */
+    public JambelCircuitBreaker(JambelCommLink link, Executor probeExecutor) {
+        this.link = link;
+        this.probeExecutor = probeExecutor;
+    }
+
+    public JambelCircuitBreaker(JambelCommLink link) {
+        this(link, JambelExecutors.defaultExecutor());
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public void addStateListener(StateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeStateListener(StateListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Close the breaker regardless of its state (e.g. after the jambel was replaced).
+     */
+    public void reset() {
+        final State oldState;
+        synchronized (this) {
+            cancelProbe();
+            consecutiveFailures = 0;
+            probeDelayMsec = 0;
+            oldState = state;
+            state = State.CLOSED;
+        }
+        notifyListeners(oldState, State.CLOSED);
+    }
+
+    @Override
+    public void setConnectTimeout(int milliSeconds) {
+        link.setConnectTimeout(milliSeconds);
+    }
+
+    @Override
+    public String getEndpoint() {
+        return link.getEndpoint();
+    }
+
+    @Override
+    public String sendCommand(String command) throws JambelException {
+        return sendCommands(Collections.singletonList(command)).get(0);
+    }
+
+    @Override
+    public List<String> sendCommands(List<String> commands) throws JambelException {
+        synchronized (this) {
+            if (state != State.CLOSED) {
+                throw new JambelCircuitOpenException(String.format(
+                    "Not sending '%s'; the jambel seems to be down", String.join("; ", commands)));
+            }
+        }
+
+        try {
+            final List<String> responses = link.sendCommands(commands);
+            onSuccess();
+            return responses;
+        } catch (JambelConnectException | JambelIoException e) {
+            onFailure();
+            throw e;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        consecutiveFailures = 0;
+    }
+
+    private void onFailure() {
+        synchronized (this) {
+            if ((state != State.CLOSED) || (++consecutiveFailures < failureThreshold)) {
+                return;
+            }
+            probeDelayMsec = initialProbeDelayMsec;
+            openAndScheduleProbe();
+        }
+        log.info("Jambel failed {} times in a row; failing fast from now on", failureThreshold);
+        notifyListeners(State.CLOSED, State.OPEN);
+    }
+
+    private void openAndScheduleProbe() {
+        state = State.OPEN;
+        probeTask = LinkTimer.get().schedule(this::startProbe,
+            probeDelayMsec, TimeUnit.MILLISECONDS);
+    }
+
+    private void startProbe() {
+        try {
+            probeExecutor.execute(this::probe);
+        } catch (RejectedExecutionException e) {
+            // the probe blocks, so it must not run on the timer; try again later instead
+            synchronized (this) {
+                if (state != State.OPEN) {
+                    return;
+                }
+                probeDelayMsec = Math.min(probeDelayMsec * 2, maxProbeDelayMsec);
+                openAndScheduleProbe();
+            }
+            log.warn("Probe executor rejected the probe; trying again in {} msec", probeDelayMsec);
+        }
+    }
+
+    private void probe() {
+        synchronized (this) {
+            if (state != State.OPEN) {
+                return;
+            }
+            state = State.HALF_OPEN;
+            probeTask = null;
+        }
+        notifyListeners(State.OPEN, State.HALF_OPEN);
+
+        boolean jambelIsBack;
+        try {
+            jambelIsBack = "OK".equals(link.sendCommand("test"));
+        } catch (JambelException | RuntimeException e) {
+            log.debug("Jambel is still down ('{}')", e.getMessage());
+            jambelIsBack = false;
+        }
+
+        final State newState;
+        synchronized (this) {
+            if (state != State.HALF_OPEN) {
+                // reset() in the meantime
+                return;
+            }
+            if (jambelIsBack) {
+                consecutiveFailures = 0;
+                probeDelayMsec = 0;
+                state = State.CLOSED;
+            } else {
+                probeDelayMsec = Math.min(probeDelayMsec * 2, maxProbeDelayMsec);
+                openAndScheduleProbe();
+            }
+            newState = state;
+        }
+        if (jambelIsBack) {
+            log.info("Jambel is back again");
+        }
+        notifyListeners(State.HALF_OPEN, newState);
+    }
+
+    private void cancelProbe() {
+        if (probeTask != null) {
+            probeTask.cancel(false);
+            probeTask = null;
+        }
+    }
+
+    private void notifyListeners(State oldState, State newState) {
+        if (oldState == newState) {
+            return;
+        }
+        for (StateListener listener : listeners) {
+            try {
+                listener.stateChanged(this, oldState, newState);
+            } catch (RuntimeException e) {
+                log.warn("Listener failed to handle state change", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.jambit.hlerchl.jambel.link;
+
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of concurrent telnet sessions to one jambel.
+ * <p>
+ * The jambel accepts only one or two sessions at a time. Several links (e.g. of
+ * different services in the same JVM) talking to the same device therefore share
+ * one admission per host and port (see {@link #forEndpoint}). A link takes a
+ * permit before it connects and returns it when it disconnects; waiting links
+ * are admitted in the order they came.
+ * <p>
+ * A link which keeps its session open without using it (a persistent or prepared
+ * connection) registers as {@link #addIdleHolder idle holder}. As soon as another
+ * link has to wait, the idle holders are asked to give their sessions back.
+ */
+public class JambelConnectionAdmission {
+    /**
+     * Number of concurrent sessions per jambel unless configured otherwise.
+     */
+    public static final int DEFAULT_MAX_SESSIONS = 1;
+
+    private static final Map<String, JambelConnectionAdmission> ENDPOINTS =
+        new ConcurrentHashMap<>();
+
+    private final String endpoint;
+    private final AdjustableSemaphore permits;
+    private final AtomicInteger waitingLinks = new AtomicInteger();
+    private final Set<Runnable> idleHolders = ConcurrentHashMap.newKeySet();
+
+    @Getter
+    private volatile int maxSessions;
+
+    // guarded by this
+    private long numberOfAdmissions = 0;
+    private long numberOfRejections = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+
+    JambelConnectionAdmission(String endpoint, int maxSessions) {
+        this.endpoint = endpoint;
+        this.maxSessions = maxSessions;
+        this.permits = new AdjustableSemaphore(maxSessions);
+    }
+
+    /**
+     * Get the admission shared by all links to the given jambel.
+     *
+     * @param hostname the name or address of the jambel
+     * @param port the TCP port of the jambel
+     * @return the admission for the given endpoint
+     */
+    public static JambelConnectionAdmission forEndpoint(String hostname, int port) {
+        return ENDPOINTS.computeIfAbsent(hostname + ":" + port,
+            endpoint -> new JambelConnectionAdmission(endpoint, DEFAULT_MAX_SESSIONS));
+    }
+
+    /**
+     * Change the number of sessions which may be open at the same time.
+     * <p>
+     * When lowering the limit, sessions which are already open stay open; new
+     * sessions are admitted once enough of them were closed.
+     *
+     * @param maxSessions the maximum number of concurrent sessions (at least one)
+     */
+    public synchronized void setMaxSessions(int maxSessions) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("At least one session must be allowed");
+        }
+        final int difference = maxSessions - this.maxSessions;
+        if (difference > 0) {
+            permits.release(difference);
+        } else if (difference < 0) {
+            permits.reducePermits(-difference);
+        }
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Wait for a free session.
+     *
+     * @param maxWaitMsec how long to wait at most
+     * @return {@code true} if the caller got a session and has to {@link #release()} it
+     * @throws InterruptedException thrown in case the thread got interrupted while waiting
+     */
+    public boolean tryAcquire(long maxWaitMsec) throws InterruptedException {
+        final long start = System.nanoTime();
+        // unlike tryAcquire(), a timed attempt respects the order of the waiting links
+        boolean admitted = permits.tryAcquire(0, TimeUnit.MILLISECONDS);
+        if (!admitted && (maxWaitMsec > 0)) {
+            waitingLinks.incrementAndGet();
+            try {
+                idleHolders.forEach(Runnable::run);
+                admitted = permits.tryAcquire(maxWaitMsec, TimeUnit.MILLISECONDS);
+            } finally {
+                waitingLinks.decrementAndGet();
+            }
+        }
+        final long waitNanos = System.nanoTime() - start;
+
+        synchronized (this) {
+            if (admitted) {
+                ++numberOfAdmissions;
+                totalWaitNanos += waitNanos;
+                maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+            } else {
+                ++numberOfRejections;
+            }
+        }
+        return admitted;
+    }
+
+    /**
+     * Return a session taken by {@link #tryAcquire(long)}.
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Register a link which holds a session without using it.
+     * <p>
+     * The release request is run (on the thread of the waiting link) whenever a link
+     * starts waiting for a session; it must only hand the release over to another
+     * thread. Right after registering, the holder has to check
+     * {@link #hasWaitingLinks()} itself as a link might have started waiting before.
+     *
+     * @param releaseRequest asks the idle holder to give its session back
+     */
+    void addIdleHolder(Runnable releaseRequest) {
+        idleHolders.add(releaseRequest);
+    }
+
+    /**
+     * @param releaseRequest a release request given to {@link #addIdleHolder}
+     */
+    void removeIdleHolder(Runnable releaseRequest) {
+        idleHolders.remove(releaseRequest);
+    }
+
+    /**
+     * @return {@code true} if a link currently waits for a session
+     */
+    boolean hasWaitingLinks() {
+        return waitingLinks.get() > 0;
+    }
+
+    /**
+     * @return host and port of the jambel as "host:port"
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the number of sessions which are currently open
+     */
+    public int getActiveSessions() {
+        return Math.max(0, maxSessions - permits.availablePermits());
+    }
+
+    /**
+     * @return the (estimated) number of links waiting for a session
+     */
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * @return how many sessions were admitted so far
+     */
+    public synchronized long getNumberOfAdmissions() {
+        return numberOfAdmissions;
+    }
+
+    /**
+     * @return how many links gave up waiting for a session
+     */
+    public synchronized long getNumberOfRejections() {
+        return numberOfRejections;
+    }
+
+    /**
+     * @return how long admitted links waited for their session on average (in milliseconds)
+     */
+    public synchronized long getAverageWaitMsec() {
+        if (numberOfAdmissions == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / numberOfAdmissions);
+    }
+
+    /**
+     * @return the longest time a link waited for its session (in milliseconds)
+     */
+    public synchronized long getMaxWaitMsec() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    private static class AdjustableSemaphore extends Semaphore {
+        AdjustableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.jambit.hlerchl.jambel.link;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single thread which drives the network traffic of many {@link JambelNioLink}s.
+ * <p>
+ * All sockets are non-blocking and multiplexed via one {@link Selector}. So
+ * controlling hundreds of jambels doesn't need hundreds of blocked threads.
+ * <p>
+ * Everything registered here runs on the loop's thread; handlers must never block.
+ */
+@Slf4j
+public class JambelNioEventLoop implements Closeable {
+    private static JambelNioEventLoop defaultLoop = null;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Set<Handler> activeHandlers = ConcurrentHashMap.newKeySet();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Something which wants to be informed when its channel is ready.
+     */
+    interface Handler {
+        void onReady(SelectionKey key);
+
+        /**
+         * Called on the loop's thread if the loop gets closed while the handler
+         * is still active (see {@link #activate}).
+         */
+        void onClose();
+    }
+
+    public JambelNioEventLoop() {
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open selector", e);
+        }
+        thread = new Thread(this::run, "jambel-nio-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Get the event loop which is shared by all links that weren't given an explicit loop.
+     *
+     * @return the process wide default event loop
+     */
+    public static synchronized JambelNioEventLoop getDefault() {
+        if (defaultLoop == null) {
+            defaultLoop = new JambelNioEventLoop();
+        }
+        return defaultLoop;
+    }
+
+    /**
+     * Stop the loop's thread and close the selector.
+     * <p>
+     * Channels which are still registered are closed as well. Handlers which are
+     * still active are told via {@link Handler#onClose()}; tasks which didn't run
+     * yet are dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * @throws RejectedExecutionException if the loop is closed
+     */
+    void execute(Runnable task) {
+        if (!running) {
+            throw new RejectedExecutionException("Jambel event loop is closed");
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    ScheduledFuture<?> schedule(Runnable task, long milliSeconds) {
+        return LinkTimer.get().schedule(() -> {
+            if (running) {
+                execute(task);
+            }
+        }, milliSeconds, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Keep track of a handler until it {@link #deactivate}s itself, so it can be
+     * told if the loop gets closed in the meantime.
+     *
+     * @throws RejectedExecutionException if the loop is closed
+     */
+    void activate(Handler handler) {
+        activeHandlers.add(handler);
+        if (!running) {
+            activeHandlers.remove(handler);
+            throw new RejectedExecutionException("Jambel event loop is closed");
+        }
+    }
+
+    void deactivate(Handler handler) {
+        activeHandlers.remove(handler);
+    }
+
+    SelectionKey register(SelectableChannel channel, int operations, Handler handler)
+        throws ClosedChannelException {
+        return channel.register(selector, operations, handler);
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                log.warn("Selecting ready channels failed: {}", e.getMessage());
+            }
+
+            runTasks();
+            handleSelectedKeys();
+        }
+
+        closeSelector();
+        tasks.clear();
+        closeActiveHandlers();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Task in jambel event loop failed", e);
+            }
+        }
+    }
+
+    private void handleSelectedKeys() {
+        final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            final SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            try {
+                ((Handler) key.attachment()).onReady(key);
+            } catch (RuntimeException e) {
+                log.error("Handler in jambel event loop failed", e);
+            }
+        }
+    }
+
+    private void closeActiveHandlers() {
+        // handlers activated after running was cleared are rejected by activate()
+        final Iterator<Handler> handlers = activeHandlers.iterator();
+        while (handlers.hasNext()) {
+            final Handler handler = handlers.next();
+            handlers.remove();
+            try {
+                handler.onClose();
+            } catch (RuntimeException e) {
+                log.error("Closing handler of jambel event loop failed", e);
+            }
+        }
+    }
+
+    private void closeSelector() {
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                log.debug("Ignoring '{}' while closing channel", e.getMessage());
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.debug("Ignoring '{}' while closing selector", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.jambit.hlerchl.jambel.link;
+
+import com.jambit.hlerchl.jambel.entity.JambelCommLink;
+import com.jambit.hlerchl.jambel.exceptions.JambelConnectException;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import com.jambit.hlerchl.jambel.exceptions.JambelIoException;
+import com.jambit.hlerchl.jambel.exceptions.JambelTimeoutException;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A link to a jambel which uses non-blocking sockets driven by a {@link JambelNioEventLoop}.
+ * <p>
+ * The link behaves like {@link JambelTelnetLink} (one connection per command or
+ * batch, connect retries) but doesn't block a thread while waiting for the jambel.
+ * Commands for the same jambel are sent one after the other; commands for
+ * different jambels run in parallel on the same event loop.
+ */
+@Slf4j
+public class JambelNioLink implements JambelCommLink {
+    private static final int RECEIVE_BUFFER_SIZE = 128;
+    private static final int DEFAULT_CONNECT_TIMEOUT_MSEC = 5000;
+    private static final int DEFAULT_READ_TIMEOUT_MSEC = 5000;
+    private static final int DEFAULT_COMMAND_TIMEOUT_MSEC = 10000;
+
+    private final JambelNioEventLoop eventLoop;
+    private final String hostname;
+    private final int port;
+
+    // only accessed from within the event loop
+    private final Queue<Exchange> pendingExchanges = new ArrayDeque<>();
+    private Exchange activeExchange = null;
+
+    @Getter
+    private final RetrySettings retrySettings = new RetrySettings();
+    @Setter
+    private volatile int readTimeoutMsec = DEFAULT_READ_TIMEOUT_MSEC;
+    private volatile int connectTimeoutMsec = DEFAULT_CONNECT_TIMEOUT_MSEC;
+    private volatile int commandTimeoutMsec = DEFAULT_COMMAND_TIMEOUT_MSEC;
+
+    public JambelNioLink(JambelNioEventLoop eventLoop, String hostname, int port) {
+        this.eventLoop = eventLoop;
+        this.hostname = hostname;
+        this.port = port;
+    }
+
+    public JambelNioLink(String hostname, int port) {
+        this(JambelNioEventLoop.getDefault(), hostname, port);
+    }
+
+    @Override
+    public void setConnectTimeout(int milliSeconds) {
+        connectTimeoutMsec = milliSeconds;
+    }
+
+    /**
+     * Set how long sending commands may take at most.
+     * <p>
+     * The time covers connecting, writing the commands, reading the responses and
+     * all retries in between. If it expires, sending fails with a
+     * {@link JambelTimeoutException}. Waiting for earlier commands to the same
+     * jambel doesn't count.
+     *
+     * @param milliSeconds the deadline for each call of {@link #sendCommandsAsync}
+     */
+    public void setCommandTimeoutMsec(int milliSeconds) {
+        commandTimeoutMsec = milliSeconds;
+    }
+
+    @Override
+    public String getEndpoint() {
+        return hostname + ":" + port;
+    }
+
+    /**
+     * Retry failed commands up to the given number of times with a fixed delay.
+     * <p>
+     * Use {@code getRetrySettings()} for other retry policies.
+     *
+     * @param numberOfConnectRetries how often to retry at most
+     */
+    public void setNumberOfConnectRetries(int numberOfConnectRetries) {
+        retrySettings.setNumberOfRetries(numberOfConnectRetries);
+    }
+
+    /**
+     * Retry failed commands after a fixed delay.
+     * <p>
+     * Use {@code getRetrySettings()} for other retry policies.
+     *
+     * @param msecUntilRetry the delay before each retry in milliseconds
+     */
+    public void setMsecUntilRetry(int msecUntilRetry) {
+        retrySettings.setMsecUntilRetry(msecUntilRetry);
+    }
+
+    @Override
+    public String sendCommand(String command) throws JambelException {
+        return await(sendCommandAsync(command));
+    }
+
+    @Override
+    public List<String> sendCommands(List<String> commands) throws JambelException {
+        return await(sendCommandsAsync(commands));
+    }
+
+    /**
+     * Send a command without waiting for the response.
+     *
+     * @param command the command to send
+     * @return a future which completes with the response of the jambel or
+     *      exceptionally with a {@link JambelException}
+     */
+    public CompletableFuture<String> sendCommandAsync(String command) {
+        return sendCommandsAsync(Collections.singletonList(command))
+            .thenApply(responses -> responses.get(0));
+    }
+
+    /**
+     * Send several commands via a single connection without waiting for the responses.
+     *
+     * @param commands the commands to send
+     * @return a future which completes with the responses of the jambel (in the same
+     *      order as the commands) or exceptionally with a {@link JambelException}
+     */
+    public CompletableFuture<List<String>> sendCommandsAsync(List<String> commands) {
+        // resolve the host name here; a slow resolver must not stall the event loop
+        final InetSocketAddress address = new InetSocketAddress(hostname, port);
+        final Exchange exchange = new Exchange(new ArrayList<>(commands), address);
+        if (commands.isEmpty()) {
+            exchange.result.complete(Collections.emptyList());
+        } else {
+            retrySettings.recordRequest();
+            try {
+                eventLoop.activate(exchange);
+                eventLoop.execute(() -> enqueue(exchange));
+            } catch (RejectedExecutionException e) {
+                exchange.result.completeExceptionally(new JambelException(String.format(
+                    "Can't send '%s': %s", describe(commands), e.getMessage())));
+            }
+        }
+        return exchange.result;
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws JambelException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JambelException("Got interrupted while waiting for the jambel");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JambelException) {
+                throw (JambelException) e.getCause();
+            }
+            throw new JambelException(String.valueOf(e.getCause()));
+        }
+    }
+
+    private void enqueue(Exchange exchange) {
+        pendingExchanges.add(exchange);
+        startNextExchange();
+    }
+
+    private void startNextExchange() {
+        if (activeExchange == null) {
+            activeExchange = pendingExchanges.poll();
+            if (activeExchange != null) {
+                activeExchange.start();
+            }
+        }
+    }
+
+    private String describe(List<String> commands) {
+        return (commands.size() == 1) ? commands.get(0) : String.join("; ", commands);
+    }
+
+    /**
+     * One connection to the jambel: connect, write all commands, read all responses.
+     * <p>
+     * All methods are called from within the event loop.
+     */
+    private class Exchange implements JambelNioEventLoop.Handler {
+        private final List<String> commands;
+        private final CompletableFuture<List<String>> result = new CompletableFuture<>();
+        private final List<String> responses;
+        private final ResponseBuffer responseBuffer = new ResponseBuffer(RECEIVE_BUFFER_SIZE);
+        private final ByteBuffer request;
+        private final InetSocketAddress address;
+        private final RetryPolicy.CommandClass commandClass;
+
+        private SocketChannel channel = null;
+        private ScheduledFuture<?> deadline = null;
+        private int retryNr = 0;
+        private long retryDelayMsec = 0;
+        private int deadlineGeneration = 0;
+        private long commandDeadlineNanos = 0;
+
+        Exchange(List<String> commands, InetSocketAddress address) {
+            this.commands = commands;
+            this.address = address;
+            this.commandClass = RetryPolicy.CommandClass.of(commands);
+            this.responses = new ArrayList<>(commands.size());
+            // encoded like the blocking links do; the buffer gets exactly the required size
+            final CommandEncoder encoder = new CommandEncoder(0);
+            final int length = encoder.encode(commands);
+            this.request = ByteBuffer.wrap(encoder.getBuffer(), 0, length);
+        }
+
+        void start() {
+            if (retryNr == 0) {
+                commandDeadlineNanos =
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commandTimeoutMsec);
+            }
+            responses.clear();
+            responseBuffer.clear();
+            request.rewind();
+
+            try {
+                if (address.isUnresolved()) {
+                    throw new UnknownHostException(hostname);
+                }
+
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                log.debug("{}: Sending '{}' ... ", hostname, describe(commands));
+                if (channel.connect(address)) {
+                    onConnected(eventLoop.register(channel, SelectionKey.OP_WRITE, this));
+                } else {
+                    eventLoop.register(channel, SelectionKey.OP_CONNECT, this);
+                    setDeadline(connectTimeoutMsec, "Timed out while connecting");
+                }
+            } catch (IOException e) {
+                onConnectFailed(e);
+            }
+        }
+
+        @Override
+        public void onReady(SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    try {
+                        channel.finishConnect();
+                    } catch (IOException e) {
+                        onConnectFailed(e);
+                        return;
+                    }
+                    onConnected(key);
+                } else if (key.isWritable()) {
+                    channel.write(request);
+                    if (!request.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                } else if (key.isReadable()) {
+                    onReadable();
+                }
+            } catch (IOException e) {
+                retryOrFail(new JambelIoException(String.format("Got '%s' while sending '%s'",
+                    e.getMessage(), describe(commands))));
+            }
+        }
+
+        private void onConnected(SelectionKey key) {
+            key.interestOps(SelectionKey.OP_WRITE);
+            setDeadline(readTimeoutMsec, "Timed out while waiting for response");
+        }
+
+        private void onReadable() throws IOException {
+            if (responseBuffer.readFrom(channel) < 0) {
+                throw new IOException("Connection closed by jambel");
+            }
+
+            String response;
+            while ((response = responseBuffer.nextResponse()) != null) {
+                log.debug("{}: received response '{}'", hostname, response);
+                responses.add(response);
+            }
+
+            if (responses.size() >= commands.size()) {
+                finish();
+                result.complete(new ArrayList<>(responses.subList(0, commands.size())));
+            }
+        }
+
+        private void onConnectFailed(IOException e) {
+            closeChannel();
+
+            final String reason = (e instanceof UnknownHostException)
+                ? "Unknown host. Check if '" + hostname + "' is the correct name and if it's online"
+                : String.format("Got '%s' while sending '%s'", e.getMessage(), describe(commands));
+            if ((e instanceof ConnectException) || (e instanceof UnknownHostException)) {
+                retryOrFail(new JambelConnectException(reason));
+            } else {
+                retryOrFail(new JambelIoException(reason));
+            }
+        }
+
+        private void retryOrFail(JambelException e) {
+            retryDelayMsec = retrySettings.nextDelay(commandClass, e, ++retryNr, retryDelayMsec);
+            final boolean deadlineExpires = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(retryDelayMsec) >= commandDeadlineNanos;
+            if ((retryDelayMsec < 0) || deadlineExpires) {
+                if (e instanceof JambelConnectException) {
+                    fail(new JambelConnectException(String.format("While sending '%s': %s",
+                        describe(commands), e.getMessage())));
+                } else {
+                    fail(e);
+                }
+                return;
+            }
+
+            log.debug("{}: retrying in {} msec after '{}'", hostname, retryDelayMsec,
+                e.getMessage());
+            cancelDeadline();
+            closeChannel();
+            eventLoop.schedule(this::start, retryDelayMsec);
+        }
+
+        /**
+         * Give up on the current phase after the given time, or earlier if the
+         * deadline of the whole command expires before.
+         */
+        private void setDeadline(int milliSeconds, String message) {
+            cancelDeadline();
+            final long remainingMsec = Math.max(1, TimeUnit.NANOSECONDS.toMillis(
+                commandDeadlineNanos - System.nanoTime()));
+            final int generation = deadlineGeneration;
+            deadline = eventLoop.schedule(() -> {
+                if ((generation == deadlineGeneration) && !result.isDone()) {
+                    retryOrFail(new JambelTimeoutException(
+                        String.format("%s while sending '%s'", message, describe(commands))));
+                }
+            }, Math.min(milliSeconds, remainingMsec));
+        }
+
+        private void cancelDeadline() {
+            ++deadlineGeneration;
+            if (deadline != null) {
+                deadline.cancel(false);
+                deadline = null;
+            }
+        }
+
+        private void fail(JambelException e) {
+            finish();
+            result.completeExceptionally(e);
+        }
+
+        @Override
+        public void onClose() {
+            cancelDeadline();
+            closeChannel();
+            result.completeExceptionally(new JambelException(String.format(
+                "Jambel event loop got closed while sending '%s'", describe(commands))));
+        }
+
+        private void finish() {
+            cancelDeadline();
+            closeChannel();
+            eventLoop.deactivate(this);
+            activeExchange = null;
+            startNextExchange();
+        }
+
+        private void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.debug("{}: ignoring '{}' while disconnecting", hostname, e.getMessage());
+                }
+                channel = null;
+            }
+        }
+    }
+}
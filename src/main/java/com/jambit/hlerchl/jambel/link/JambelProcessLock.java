@@ -0,0 +1,273 @@
+package com.jambit.hlerchl.jambel.link;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes the sessions to one jambel across several processes on the same machine.
+ * <p>
+ * The lock is a file lock on {@code <directory>/<host>_<port>.lock}. The operating
+ * system releases it when the holding process dies, so a crashed process never
+ * blocks the others. A lock file which is left behind is simply reused; a lock
+ * file which was deleted or replaced while being used (e.g. by a cleanup job) is
+ * opened again, so everybody locks the file which is currently there.
+ * The file contains the process currently holding the lock to ease debugging.
+ * <p>
+ * Within one JVM all links to the jambel share the same instance (see
+ * {@link #forEndpoint}); they are queued in order before competing for the file.
+ */
+@Slf4j
+public class JambelProcessLock {
+    private static final Map<Path, JambelProcessLock> LOCKS = new ConcurrentHashMap<>();
+    private static final long MAX_POLL_INTERVAL_MSEC = 50;
+    private static final long LONG_WAIT_WARNING_MSEC = 5000;
+
+    @Getter
+    private final Path lockFile;
+    // a semaphore since a persistent connection may be closed by another thread
+    private final Semaphore localLock = new Semaphore(1, true);
+
+    // guarded by localLock
+    private FileChannel channel = null;
+    // identifies the file the channel is open on; null if the file system doesn't tell
+    private Object channelFileKey = null;
+    private FileLock fileLock = null;
+
+    // guarded by this
+    private long numberOfLocks = 0;
+    private long numberOfTimeouts = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+
+    JambelProcessLock(Path lockFile) {
+        this.lockFile = lockFile;
+    }
+
+    /**
+     * Get the lock for the given jambel.
+     *
+     * @param directory where the lock files are kept; all processes have to use the same
+     * @param hostname the name or address of the jambel
+     * @param port the TCP port of the jambel
+     * @return the lock for the given jambel
+     */
+    public static JambelProcessLock forEndpoint(Path directory, String hostname, int port) {
+        final String fileName =
+            hostname.replaceAll("[^A-Za-z0-9.-]", "_") + "_" + port + ".lock";
+        final Path lockFile = directory.resolve(fileName).toAbsolutePath().normalize();
+        return LOCKS.computeIfAbsent(lockFile, JambelProcessLock::new);
+    }
+
+    /**
+     * Wait for the lock.
+     *
+     * @param maxWaitMsec how long to wait at most
+     * @return {@code true} if the caller got the lock and has to {@link #unlock()} it
+     * @throws IOException thrown in case the lock file couldn't be accessed
+     * @throws InterruptedException thrown in case the thread got interrupted while waiting
+     */
+    public boolean tryLock(long maxWaitMsec) throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxWaitMsec);
+
+        if (!localLock.tryAcquire(maxWaitMsec, TimeUnit.MILLISECONDS)) {
+            recordTimeout();
+            return false;
+        }
+
+        try {
+            long pollIntervalMsec = 1;
+            boolean warned = false;
+            for (; ; ) {
+                final FileLock lock = tryLockFile();
+                if (lock != null) {
+                    fileLock = lock;
+                    writeHolder();
+                    recordLock(System.nanoTime() - start);
+                    return true;
+                }
+
+                final long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    localLock.release();
+                    recordTimeout();
+                    return false;
+                }
+                if (!warned && (System.nanoTime() - start
+                        > TimeUnit.MILLISECONDS.toNanos(LONG_WAIT_WARNING_MSEC))) {
+                    warned = true;
+                    log.warn("Waiting for {} for a long time; it is held by {}",
+                        lockFile, readHolder());
+                }
+
+                TimeUnit.MILLISECONDS.sleep(Math.min(pollIntervalMsec,
+                    TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1));
+                pollIntervalMsec = Math.min(pollIntervalMsec * 2, MAX_POLL_INTERVAL_MSEC);
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            localLock.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Return the lock taken by {@link #tryLock(long)}.
+     */
+    public void unlock() {
+        try {
+            if (fileLock != null) {
+                fileLock.release();
+            }
+        } catch (IOException e) {
+            log.debug("Ignoring '{}' while releasing {}", e.getMessage(), lockFile);
+        } finally {
+            fileLock = null;
+            localLock.release();
+        }
+    }
+
+    /**
+     * @return how often the lock was taken so far
+     */
+    public synchronized long getNumberOfLocks() {
+        return numberOfLocks;
+    }
+
+    /**
+     * @return how often callers gave up waiting for the lock
+     */
+    public synchronized long getNumberOfTimeouts() {
+        return numberOfTimeouts;
+    }
+
+    /**
+     * @return how long callers waited for the lock on average (in milliseconds)
+     */
+    public synchronized long getAverageWaitMsec() {
+        if (numberOfLocks == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / numberOfLocks);
+    }
+
+    /**
+     * @return the longest time a caller waited for the lock (in milliseconds)
+     */
+    public synchronized long getMaxWaitMsec() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    private FileLock tryLockFile() throws IOException {
+        for (; ; ) {
+            if ((channel == null) || !channel.isOpen() || !Files.exists(lockFile)) {
+                // first use or the file was removed under our feet; locking the old
+                // (deleted) file wouldn't exclude anybody
+                closeChannel();
+                openChannel();
+            }
+
+            final FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // held by someone in this JVM who doesn't use this instance
+                return null;
+            }
+            if ((lock == null) || (channelFileKey == null) || channelFileKey.equals(fileKey())) {
+                return lock;
+            }
+
+            // the file was replaced since we opened it; the others lock the new one
+            log.debug("{} was replaced; opening it again", lockFile);
+            lock.release();
+            closeChannel();
+        }
+    }
+
+    private void openChannel() throws IOException {
+        Files.createDirectories(lockFile.getParent());
+        for (; ; ) {
+            final Object keyBeforeOpen = fileKey();
+            channel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channelFileKey = fileKey();
+            if ((channelFileKey == null) || channelFileKey.equals(keyBeforeOpen)) {
+                return;
+            }
+            // the file was created or replaced meanwhile; we can't tell which one we've got
+            closeChannel();
+        }
+    }
+
+    /**
+     * @return the key of the file which is currently at the lock file's path
+     *      ({@code null} if there is no such file or the file system doesn't provide keys)
+     */
+    private Object fileKey() throws IOException {
+        try {
+            return Files.readAttributes(lockFile, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Ignoring '{}' while closing {}", e.getMessage(), lockFile);
+            }
+            channel = null;
+            channelFileKey = null;
+        }
+    }
+
+    private void writeHolder() {
+        final String holder = ManagementFactory.getRuntimeMXBean().getName()
+            + " since " + Instant.now() + "\n";
+        try {
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap(holder.getBytes(StandardCharsets.UTF_8)), 0);
+        } catch (IOException e) {
+            // the lock is what counts; the content is just for debugging
+            log.debug("Ignoring '{}' while writing {}", e.getMessage(), lockFile);
+        }
+    }
+
+    private String readHolder() {
+        try {
+            return new String(Files.readAllBytes(lockFile), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return "an unknown process";
+        }
+    }
+
+    private synchronized void recordLock(long waitNanos) {
+        ++numberOfLocks;
+        totalWaitNanos += waitNanos;
+        maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+    }
+
+    private synchronized void recordTimeout() {
+        ++numberOfTimeouts;
+    }
+}
@@ -0,0 +1,123 @@
+package com.jambit.hlerchl.jambel.link;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket which paces the commands sent to a jambel.
+ * <p>
+ * The embedded IP stack of the jambel fails when it gets too many connections
+ * within a short time. Retrying these failures only makes things worse. A link
+ * with a rate limiter takes a token before each attempt to send commands; tokens
+ * are refilled at a steady rate and up to {@code burstSize} of them can be saved
+ * up while the link is idle.
+ * <p>
+ * Links talking to the same jambel should share one limiter (see {@link #forHost}).
+ */
+public class JambelRateLimiter {
+    private static final Map<String, JambelRateLimiter> HOST_LIMITERS = new ConcurrentHashMap<>();
+
+    // guarded by this
+    private double tokensPerNano;
+    private double burstSize;
+    private double availableTokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param commandsPerSecond how many commands may be sent per second in the long run
+     * @param burstSize how many commands may be sent at once after the link was idle
+     */
+    public JambelRateLimiter(double commandsPerSecond, int burstSize) {
+        setRate(commandsPerSecond, burstSize);
+        this.availableTokens = this.burstSize;
+    }
+
+    /**
+     * Get the limiter shared by all links to the given host.
+     * <p>
+     * The rate is only used when the limiter for the host is created; use
+     * {@link #setRate} to change it later on.
+     *
+     * @param hostname the name or address of the jambel
+     * @param commandsPerSecond how many commands may be sent per second in the long run
+     * @param burstSize how many commands may be sent at once after the link was idle
+     * @return the limiter for the given host
+     */
+    public static JambelRateLimiter forHost(String hostname, double commandsPerSecond,
+                                            int burstSize) {
+        return HOST_LIMITERS.computeIfAbsent(hostname,
+            ignored -> new JambelRateLimiter(commandsPerSecond, burstSize));
+    }
+
+    /**
+     * Change the rate of this limiter.
+     *
+     * @param commandsPerSecond how many commands may be sent per second in the long run
+     * @param burstSize how many commands may be sent at once after the link was idle
+     */
+    public synchronized void setRate(double commandsPerSecond, int burstSize) {
+        if ((commandsPerSecond <= 0) || (burstSize < 1)) {
+            throw new IllegalArgumentException("Rate and burst size must be positive");
+        }
+        refill();
+        this.tokensPerNano = commandsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burstSize = burstSize;
+        this.availableTokens = Math.min(availableTokens, burstSize);
+    }
+
+    /**
+     * Take a token if there is one.
+     *
+     * @return {@code true} if a token was taken
+     */
+    public boolean tryAcquire() {
+        synchronized (this) {
+            refill();
+            if (availableTokens < 1) {
+                return false;
+            }
+            availableTokens -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * Take a token; wait for it if necessary.
+     * <p>
+     * If the token isn't available within the given time, the method returns
+     * right away (without waiting at all).
+     *
+     * @param maxWaitMsec how long to wait at most
+     * @return {@code true} if a token was taken
+     * @throws InterruptedException thrown in case the thread got interrupted while waiting
+     */
+    public boolean tryAcquire(long maxWaitMsec) throws InterruptedException {
+        final long waitNanos;
+        synchronized (this) {
+            refill();
+            waitNanos = (availableTokens >= 1)
+                ? 0
+                : (long) Math.ceil((1 - availableTokens) / tokensPerNano);
+            if (waitNanos > TimeUnit.MILLISECONDS.toNanos(maxWaitMsec)) {
+                return false;
+            }
+            // reserve the token now; callers after us have to wait even longer
+            availableTokens -= 1;
+        }
+
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return true;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        if (lastRefillNanos != 0) {
+            availableTokens = Math.min(burstSize,
+                availableTokens + (now - lastRefillNanos) * tokensPerNano);
+        }
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,85 @@
+package com.jambit.hlerchl.jambel.link;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Talks to the jambel via a plain TCP socket.
+ * <p>
+ * The jambel doesn't negotiate any telnet options; its protocol is nothing but
+ * CRLF terminated ASCII lines. So this link skips the telnet layer of
+ * {@link JambelTelnetLink}: the commands are encoded into a reusable buffer and
+ * written with a single call; the responses are cut from a reusable receive buffer.
+ * <p>
+ * Timeouts, retries, persistent connections, rate limiting and the
+ * {@link JambelConnectionAdmission connection admission} work like in
+ * {@link JambelTelnetLink}.
+ */
+@Slf4j
+public class JambelSocketLink extends BlockingJambelLink {
+    // guarded by lock; null while not connected
+    private Socket socket = null;
+
+    public JambelSocketLink(String hostname, int port) {
+        super(hostname, port);
+    }
+
+    @Override
+    void openConnection(InetAddress cachedAddress, int timeoutMsec) throws IOException {
+        final Socket newSocket = new Socket();
+        try {
+            newSocket.setTcpNoDelay(true);
+            final InetSocketAddress address = (cachedAddress != null)
+                ? new InetSocketAddress(cachedAddress, port)
+                : new InetSocketAddress(hostname, port);
+            newSocket.connect(address, timeoutMsec);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(newSocket);
+            throw e;
+        }
+        socket = newSocket;
+    }
+
+    @Override
+    void closeConnection() throws IOException {
+        if (socket != null) {
+            final Socket oldSocket = socket;
+            socket = null;
+            oldSocket.close();
+        }
+    }
+
+    @Override
+    boolean isConnected() {
+        return socket != null;
+    }
+
+    @Override
+    OutputStream getOutputStream() throws IOException {
+        return socket.getOutputStream();
+    }
+
+    @Override
+    InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+    }
+
+    @Override
+    void setReadTimeout(int milliSeconds) throws IOException {
+        socket.setSoTimeout(milliSeconds);
+    }
+
+    private void closeQuietly(Socket s) {
+        try {
+            s.close();
+        } catch (IOException e) {
+            log.debug("{}: ignoring '{}' while disconnecting", hostname, e.getMessage());
+        }
+    }
+}
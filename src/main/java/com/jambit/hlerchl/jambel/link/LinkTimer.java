@@ -0,0 +1,27 @@
+package com.jambit.hlerchl.jambel.link;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A single daemon thread shared by all links for their housekeeping tasks
+ * (e.g. closing idle connections).
+ * <p>
+ * Tasks scheduled here must be short; they must never talk to a jambel
+ * while holding up the timer for others.
+ */
+final class LinkTimer {
+    private static final ScheduledExecutorService TIMER =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "jambel-link-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private LinkTimer() {
+    }
+
+    static ScheduledExecutorService get() {
+        return TIMER;
+    }
+}
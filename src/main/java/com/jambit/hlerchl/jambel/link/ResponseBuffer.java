@@ -0,0 +1,105 @@
+package com.jambit.hlerchl.jambel.link;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Collects the bytes received from a jambel and cuts them into responses.
+ * <p>
+ * Each response of the jambel is terminated by CRLF. Bytes following the
+ * first CRLF are kept for the next call to {@link #nextResponse()} so
+ * nothing gets lost when a connection is used for more than one command.
+ * A response which doesn't fit into the buffer is treated as an I/O error.
+ */
+class ResponseBuffer {
+    // the jambel acknowledges most commands with it; sharing it saves a string per command
+    private static final String OK = "OK";
+
+    private final byte[] buffer;
+    private int numBytes = 0;
+
+    ResponseBuffer(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    void clear() {
+        numBytes = 0;
+    }
+
+    /**
+     * Read as many bytes as the stream currently offers (and as fit into the buffer).
+     *
+     * @param in the stream to read from
+     * @return the number of bytes read or -1 if the stream reached its end
+     * @throws IOException forwarded from the stream or thrown if the buffer is full
+     */
+    int readFrom(InputStream in) throws IOException {
+        checkNotFull();
+        final int numNewBytes = in.read(buffer, numBytes, buffer.length - numBytes);
+        if (numNewBytes > 0) {
+            numBytes += numNewBytes;
+        }
+        return numNewBytes;
+    }
+
+    /**
+     * Read as many bytes as the channel currently offers (and as fit into the buffer).
+     *
+     * @param channel the (non-blocking) channel to read from
+     * @return the number of bytes read or -1 if the channel reached its end
+     * @throws IOException forwarded from the channel or thrown if the buffer is full
+     */
+    int readFrom(ReadableByteChannel channel) throws IOException {
+        checkNotFull();
+        final int numNewBytes = channel.read(
+            ByteBuffer.wrap(buffer, numBytes, buffer.length - numBytes));
+        if (numNewBytes > 0) {
+            numBytes += numNewBytes;
+        }
+        return numNewBytes;
+    }
+
+    /**
+     * Cut the next complete response from the buffer.
+     * <p>
+     * Empty lines (a bare CRLF) are skipped; the jambel never answers
+     * with an empty string.
+     *
+     * @return the response without its trailing CRLF or {@code null} if
+     *      there is no complete response in the buffer (yet)
+     */
+    String nextResponse() {
+        for (int i = 1; i < numBytes; ++i) {
+            if ((buffer[i - 1] == '\r') && (buffer[i] == '\n')) {
+                final int responseLength = i - 1;
+                final String response;
+                if (responseLength == 0) {
+                    response = null;
+                } else if ((responseLength == 2) && (buffer[0] == 'O') && (buffer[1] == 'K')) {
+                    response = OK;
+                } else {
+                    response = new String(buffer, 0, responseLength, StandardCharsets.UTF_8);
+                }
+                consume(i + 1);
+                return (response != null) ? response : nextResponse();
+            }
+        }
+        return null;
+    }
+
+    private void checkNotFull() throws IOException {
+        // reading zero bytes again and again would spin forever
+        if (numBytes == buffer.length) {
+            throw new IOException(String.format(
+                "Received %d bytes without line end; the jambel is confused", numBytes));
+        }
+    }
+
+    private void consume(int count) {
+        System.arraycopy(buffer, count, buffer, 0, numBytes - count);
+        numBytes -= count;
+    }
+}
@@ -0,0 +1,78 @@
+package com.jambit.hlerchl.jambel.link;
+
+/**
+ * Caps the share of retries in the traffic to the jambels.
+ * <p>
+ * Each request earns a fraction of a retry; each retry spends a whole one. So in
+ * the long run at most {@code retryRatio} retries are sent per request, no matter
+ * how many clients see failures at the same time. A few retries can be saved up
+ * for the occasional failure after a quiet period.
+ * <p>
+ * Links don't use a budget unless one is set (see {@link RetrySettings#setBudget});
+ * the {@link #global() global} budget can be shared by all links of the JVM.
+ */
+public class RetryBudget {
+    private static final RetryBudget GLOBAL = new RetryBudget(0.2, 20);
+
+    private final double retryRatio;
+    private final double maxSavedRetries;
+
+    // guarded by this
+    private double availableRetries;
+    private long numberOfRetries = 0;
+    private long numberOfDeniedRetries = 0;
+
+    /**
+     * @param retryRatio how many retries are allowed per request in the long run
+     * @param maxSavedRetries how many retries can be saved up
+     */
+    public RetryBudget(double retryRatio, int maxSavedRetries) {
+        this.retryRatio = retryRatio;
+        this.maxSavedRetries = maxSavedRetries;
+        this.availableRetries = maxSavedRetries;
+    }
+
+    /**
+     * @return a budget which can be shared by all links of the JVM (opt-in; note that
+     *      a jambel which is down then uses up the retries of all the others)
+     */
+    public static RetryBudget global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Tell the budget that a request is sent (for the first time).
+     */
+    public synchronized void recordRequest() {
+        availableRetries = Math.min(maxSavedRetries, availableRetries + retryRatio);
+    }
+
+    /**
+     * Ask for permission to retry a failed request.
+     *
+     * @return {@code true} if the retry may be sent
+     */
+    public synchronized boolean tryRetry() {
+        if (availableRetries < 1) {
+            ++numberOfDeniedRetries;
+            return false;
+        }
+        availableRetries -= 1;
+        ++numberOfRetries;
+        return true;
+    }
+
+    /**
+     * @return how many retries were allowed so far
+     */
+    public synchronized long getNumberOfRetries() {
+        return numberOfRetries;
+    }
+
+    /**
+     * @return how many retries were denied since the budget was used up
+     */
+    public synchronized long getNumberOfDeniedRetries() {
+        return numberOfDeniedRetries;
+    }
+}
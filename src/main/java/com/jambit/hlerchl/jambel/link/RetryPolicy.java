@@ -0,0 +1,114 @@
+package com.jambit.hlerchl.jambel.link;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether (and when) a failed attempt to talk to a jambel is repeated.
+ * <p>
+ * Many clients retrying with the same fixed delay hit a rebooting jambel in
+ * lockstep. The {@link #exponential exponential} and especially the
+ * {@link #decorrelatedJitter decorrelated jitter} policies spread them out.
+ */
+public interface RetryPolicy {
+    /**
+     * Returned by {@link #delayBeforeRetry} to stop retrying.
+     */
+    long GIVE_UP = -1;
+
+    /**
+     * @param retryNr the number of the upcoming retry (starting with 1)
+     * @param previousDelayMsec the delay before the previous retry ({@code 0} for the first)
+     * @return the delay before the upcoming retry in milliseconds or {@link #GIVE_UP}
+     */
+    long delayBeforeRetry(int retryNr, long previousDelayMsec);
+
+    /**
+     * Commands are retried differently depending on whether they change the jambel.
+     */
+    enum CommandClass {
+        /**
+         * Commands which only read from the jambel; repeating them is harmless
+         * even if the jambel might have received them already.
+         */
+        READ,
+        /**
+         * Commands which change the state of the jambel.
+         */
+        WRITE;
+
+        /**
+         * @param commands telnet commands sent together
+         * @return {@link #READ} if all of the commands only read from the jambel
+         */
+        public static CommandClass of(List<String> commands) {
+            for (String command : commands) {
+                if (of(command) == WRITE) {
+                    return WRITE;
+                }
+            }
+            return READ;
+        }
+
+        /**
+         * @param command a single telnet command
+         * @return {@link #READ} if the command only reads from the jambel
+         */
+        public static CommandClass of(String command) {
+            return ("status".equals(command) || "version".equals(command) || "test".equals(command))
+                ? READ : WRITE;
+        }
+    }
+
+    /**
+     * @return a policy which never retries
+     */
+    static RetryPolicy none() {
+        return (retryNr, previousDelayMsec) -> GIVE_UP;
+    }
+
+    /**
+     * @param maxRetries how often to retry at most
+     * @param delayMsec the delay before each retry
+     * @return a policy which always waits the same time
+     */
+    static RetryPolicy fixed(int maxRetries, long delayMsec) {
+        return (retryNr, previousDelayMsec) -> (retryNr > maxRetries) ? GIVE_UP : delayMsec;
+    }
+
+    /**
+     * @param maxRetries how often to retry at most
+     * @param initialDelayMsec the delay before the first retry
+     * @param maxDelayMsec the longest delay
+     * @return a policy which doubles the delay with each retry
+     */
+    static RetryPolicy exponential(int maxRetries, long initialDelayMsec, long maxDelayMsec) {
+        return (retryNr, previousDelayMsec) -> {
+            if (retryNr > maxRetries) {
+                return GIVE_UP;
+            }
+            final long delay = initialDelayMsec << Math.min(retryNr - 1, 30);
+            return Math.min(Math.max(delay, initialDelayMsec), maxDelayMsec);
+        };
+    }
+
+    /**
+     * "Decorrelated jitter": each delay is picked randomly between the base delay
+     * and three times the previous delay (but not more than the maximum).
+     *
+     * @param maxRetries how often to retry at most
+     * @param baseDelayMsec the shortest delay
+     * @param maxDelayMsec the longest delay
+     * @return a policy with randomized, growing delays
+     */
+    static RetryPolicy decorrelatedJitter(int maxRetries, long baseDelayMsec, long maxDelayMsec) {
+        return (retryNr, previousDelayMsec) -> {
+            if (retryNr > maxRetries) {
+                return GIVE_UP;
+            }
+            final long upperBound = Math.max(baseDelayMsec, previousDelayMsec * 3);
+            final long delay = ThreadLocalRandom.current().nextLong(baseDelayMsec, upperBound + 1);
+            return Math.min(delay, maxDelayMsec);
+        };
+    }
+}
@@ -0,0 +1,153 @@
+package com.jambit.hlerchl.jambel.link;
+
+import com.jambit.hlerchl.jambel.exceptions.JambelConnectException;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import com.jambit.hlerchl.jambel.exceptions.JambelIoException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The retry configuration of a link: a {@link RetryPolicy} per command class and
+ * optionally a {@link RetryBudget} to spend the retries from.
+ * <p>
+ * Failed connects are retried for all commands. Reads are also retried after
+ * other I/O errors since sending them twice doesn't do any harm.
+ * <p>
+ * Without a budget (the default) each command is retried as its policy says.
+ * Settings which never retry don't take part in their budget at all, so a
+ * layer which leaves the retries to another one doesn't count the requests twice.
+ */
+@Slf4j
+public class RetrySettings {
+    private static final int DEFAULT_NUM_RETRIES = 3;
+    private static final int DEFAULT_MSEC_UNTIL_RETRY = 100;
+
+    // guarded by this
+    private final Map<RetryPolicy.CommandClass, RetryPolicy> policies =
+        new EnumMap<>(RetryPolicy.CommandClass.class);
+    private RetryBudget budget = null;
+    private boolean retrying = true;
+    private int numberOfRetries = DEFAULT_NUM_RETRIES;
+    private long msecUntilRetry = DEFAULT_MSEC_UNTIL_RETRY;
+
+    public RetrySettings() {
+        useFixedPolicy();
+    }
+
+    /**
+     * Set the policy for one class of commands.
+     *
+     * @param commandClass the class of commands the policy is for
+     * @param policy the policy to use
+     */
+    public synchronized void setPolicy(RetryPolicy.CommandClass commandClass, RetryPolicy policy) {
+        policies.put(commandClass, policy);
+        updateRetrying();
+    }
+
+    /**
+     * Set the same policy for all classes of commands.
+     *
+     * @param policy the policy to use
+     */
+    public synchronized void setPolicy(RetryPolicy policy) {
+        for (RetryPolicy.CommandClass commandClass : RetryPolicy.CommandClass.values()) {
+            policies.put(commandClass, policy);
+        }
+        updateRetrying();
+    }
+
+    public synchronized RetryPolicy getPolicy(RetryPolicy.CommandClass commandClass) {
+        return policies.get(commandClass);
+    }
+
+    /**
+     * @param budget the budget to spend the retries from (e.g. {@link RetryBudget#global()}
+     *      to share it with all links of this JVM) or {@code null} for no budget
+     */
+    public synchronized void setBudget(RetryBudget budget) {
+        this.budget = budget;
+    }
+
+    public synchronized RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Retry all commands with a {@link RetryPolicy#fixed fixed} delay (keeping the delay).
+     *
+     * @param numberOfRetries how often to retry at most
+     */
+    public synchronized void setNumberOfRetries(int numberOfRetries) {
+        this.numberOfRetries = numberOfRetries;
+        useFixedPolicy();
+    }
+
+    /**
+     * Retry all commands with a {@link RetryPolicy#fixed fixed} delay (keeping the
+     * number of retries).
+     *
+     * @param milliSeconds the delay before each retry
+     */
+    public synchronized void setMsecUntilRetry(long milliSeconds) {
+        this.msecUntilRetry = milliSeconds;
+        useFixedPolicy();
+    }
+
+    /**
+     * Tell the budget that a request is sent (for the first time).
+     */
+    public void recordRequest() {
+        final RetryBudget currentBudget;
+        synchronized (this) {
+            if (!retrying) {
+                return;
+            }
+            currentBudget = budget;
+        }
+        if (currentBudget != null) {
+            currentBudget.recordRequest();
+        }
+    }
+
+    /**
+     * Decide whether a failed attempt is repeated.
+     *
+     * @param commandClass the class of the failed commands
+     * @param failure the reason for the failure
+     * @param retryNr the number of the upcoming retry (starting with 1)
+     * @param previousDelayMsec the delay before the previous retry ({@code 0} for the first)
+     * @return the delay before the retry in milliseconds or {@link RetryPolicy#GIVE_UP}
+     */
+    public long nextDelay(RetryPolicy.CommandClass commandClass, JambelException failure,
+                          int retryNr, long previousDelayMsec) {
+        final boolean retryable = (failure instanceof JambelConnectException)
+            || ((failure instanceof JambelIoException)
+                && (commandClass == RetryPolicy.CommandClass.READ));
+        if (!retryable) {
+            return RetryPolicy.GIVE_UP;
+        }
+
+        final long delay = getPolicy(commandClass).delayBeforeRetry(retryNr, previousDelayMsec);
+        if (delay < 0) {
+            return RetryPolicy.GIVE_UP;
+        }
+        final RetryBudget currentBudget = getBudget();
+        if ((currentBudget != null) && !currentBudget.tryRetry()) {
+            log.debug("Not retrying '{}'; the retry budget is used up", failure.getMessage());
+            return RetryPolicy.GIVE_UP;
+        }
+        return delay;
+    }
+
+    private void useFixedPolicy() {
+        setPolicy(RetryPolicy.fixed(numberOfRetries, msecUntilRetry));
+    }
+
+    private void updateRetrying() {
+        retrying = policies.values().stream()
+            .anyMatch(policy -> policy.delayBeforeRetry(1, 0) >= 0);
+    }
+}
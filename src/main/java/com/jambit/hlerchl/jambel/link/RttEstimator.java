@@ -0,0 +1,141 @@
+package com.jambit.hlerchl.jambel.link;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the round-trip time to one jambel and derives timeouts from it.
+ * <p>
+ * The estimator works like the retransmission timer of TCP (RFC 6298): it keeps a
+ * smoothed round-trip time ({@code srtt}) and its variation ({@code rttvar}) and
+ * computes the timeout as {@code srtt + 4 * rttvar}. Until the first measurement
+ * the initial timeout is used. Each timeout doubles the result (up to the
+ * ceiling) until the next successful measurement.
+ * <p>
+ * All links to the same jambel share one estimator (see {@link #forEndpoint}).
+ */
+public class RttEstimator {
+    private static final int DEFAULT_INITIAL_TIMEOUT_MSEC = 1000;
+    private static final int DEFAULT_MIN_TIMEOUT_MSEC = 200;
+    private static final int DEFAULT_MAX_TIMEOUT_MSEC = 10000;
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    private static final Map<String, RttEstimator> ENDPOINTS = new ConcurrentHashMap<>();
+
+    // guarded by this
+    private int initialTimeoutMsec = DEFAULT_INITIAL_TIMEOUT_MSEC;
+    private int minTimeoutMsec = DEFAULT_MIN_TIMEOUT_MSEC;
+    private int maxTimeoutMsec = DEFAULT_MAX_TIMEOUT_MSEC;
+    private long smoothedRttNanos = -1;
+    private long rttVariationNanos = 0;
+    private long numberOfSamples = 0;
+    private int backoffShift = 0;
+
+    RttEstimator() {
+    }
+
+    /**
+     * Get the estimator shared by all links to the given jambel.
+     *
+     * @param hostname the name or address of the jambel
+     * @param port the TCP port of the jambel
+     * @return the estimator for the given endpoint
+     */
+    public static RttEstimator forEndpoint(String hostname, int port) {
+        return ENDPOINTS.computeIfAbsent(hostname + ":" + port, endpoint -> new RttEstimator());
+    }
+
+    /**
+     * @param milliSeconds the timeout to use as long as nothing was measured
+     */
+    public synchronized void setInitialTimeoutMsec(int milliSeconds) {
+        this.initialTimeoutMsec = milliSeconds;
+    }
+
+    /**
+     * @param milliSeconds the shortest timeout to derive (the floor)
+     */
+    public synchronized void setMinTimeoutMsec(int milliSeconds) {
+        this.minTimeoutMsec = milliSeconds;
+    }
+
+    /**
+     * @param milliSeconds the longest timeout to derive (the ceiling)
+     */
+    public synchronized void setMaxTimeoutMsec(int milliSeconds) {
+        this.maxTimeoutMsec = milliSeconds;
+    }
+
+    /**
+     * Add a measured round-trip time.
+     * <p>
+     * This also ends a {@link #recordTimeout() backoff}.
+     *
+     * @param rttNanos the time between sending a command and receiving its response
+     */
+    public synchronized void addSample(long rttNanos) {
+        if (smoothedRttNanos < 0) {
+            smoothedRttNanos = rttNanos;
+            rttVariationNanos = rttNanos / 2;
+        } else {
+            rttVariationNanos += (Math.abs(smoothedRttNanos - rttNanos) - rttVariationNanos) / 4;
+            smoothedRttNanos += (rttNanos - smoothedRttNanos) / 8;
+        }
+        ++numberOfSamples;
+        backoffShift = 0;
+    }
+
+    /**
+     * Tell the estimator that the jambel didn't answer in time; the next timeouts
+     * are doubled until a response arrives again.
+     */
+    public synchronized void recordTimeout() {
+        backoffShift = Math.min(backoffShift + 1, MAX_BACKOFF_SHIFT);
+    }
+
+    /**
+     * @return the smoothed round-trip time in milliseconds ({@code -1} if nothing was
+     *      measured so far)
+     */
+    public synchronized long getSmoothedRttMsec() {
+        return (smoothedRttNanos < 0) ? -1 : TimeUnit.NANOSECONDS.toMillis(smoothedRttNanos);
+    }
+
+    /**
+     * @return the variation of the round-trip time in milliseconds
+     */
+    public synchronized long getRttVariationMsec() {
+        return TimeUnit.NANOSECONDS.toMillis(rttVariationNanos);
+    }
+
+    /**
+     * @return the number of measured round-trip times
+     */
+    public synchronized long getNumberOfSamples() {
+        return numberOfSamples;
+    }
+
+    /**
+     * The time to wait for a connection or a response before giving up on it.
+     *
+     * @return the current timeout in milliseconds (between floor and ceiling)
+     */
+    public synchronized int getTimeoutMsec() {
+        final long baseMsec = (smoothedRttNanos < 0)
+            ? initialTimeoutMsec
+            : TimeUnit.NANOSECONDS.toMillis(smoothedRttNanos + 4 * rttVariationNanos);
+        final long timeoutMsec = Math.max(baseMsec, minTimeoutMsec) << backoffShift;
+        return (int) Math.min(timeoutMsec, maxTimeoutMsec);
+    }
+
+    /**
+     * The shortest time to wait before retrying. Like TCP, which retransmits once
+     * the timeout expired, this is the current timeout.
+     *
+     * @return the current retry delay in milliseconds (between floor and ceiling)
+     */
+    public synchronized int getRetryDelayMsec() {
+        return getTimeoutMsec();
+    }
+}
@@ -0,0 +1,51 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Executor and timer used by the library when a caller doesn't bring its own.
+ * <p>
+ * This is the variant for Java 21 and newer (see the multi-release jar): each
+ * blocking jambel call runs on its own virtual thread, so waiting for a slow
+ * jambel doesn't tie up a platform thread. The timer still uses a daemon
+ * platform thread; its tasks are short anyway.
+ */
+public final class JambelExecutors {
+    private JambelExecutors() {
+    }
+
+    /**
+     * Get the shared executor for running blocking jambel calls.
+     *
+     * @return an executor which starts a virtual thread per task
+     */
+    public static ExecutorService defaultExecutor() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * Get the shared timer for delayed tasks.
+     * <p>
+     * Tasks scheduled here must be short; longer work has to be handed
+     * over to an executor.
+     *
+     * @return a single threaded scheduler
+     */
+    public static ScheduledExecutorService defaultTimer() {
+        return Holder.TIMER;
+    }
+
+    private static final class Holder {
+        static final ExecutorService EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("jambel-worker-", 0).factory());
+
+        static final ScheduledExecutorService TIMER =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "jambel-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+}
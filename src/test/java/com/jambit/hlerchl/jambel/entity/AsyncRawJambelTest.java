@@ -0,0 +1,93 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.AsyncJambel;
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.JambelModule;
+import com.jambit.hlerchl.jambel.exceptions.JambelConnectException;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import com.jambit.hlerchl.jambel.exceptions.JambelResponseException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncRawJambelTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final Jambel mockedJambel = Mockito.mock(Jambel.class);
+    private final JambelModule mockedRed = Mockito.mock(JambelModule.class);
+    private AsyncRawJambel fixture;
+
+    @BeforeEach
+    void setupFixture() {
+        Mockito.doReturn(mockedRed).when(mockedJambel).red();
+        Mockito.doReturn(Mockito.mock(JambelModule.class)).when(mockedJambel).yellow();
+        Mockito.doReturn(Mockito.mock(JambelModule.class)).when(mockedJambel).green();
+        fixture = new AsyncRawJambel(mockedJambel, executor);
+        fixture.setMsecUntilRetry(1);
+    }
+
+    @Test
+    void statusIsDeliveredViaFuture() throws JambelException {
+        final Jambel.Status status = new Jambel.Status(
+            Jambel.LightStatus.ON, Jambel.LightStatus.OFF, Jambel.LightStatus.BLINK);
+        Mockito.doReturn(status).when(mockedJambel).status();
+
+        assertEquals(status, fixture.status().join());
+    }
+
+    @Test
+    void commandsAreExecutedInOrder() throws JambelException {
+        final AsyncJambel jambel = fixture;
+        final CompletableFuture<Void> first = jambel.reset();
+        final CompletableFuture<Void> second = jambel.red().blink();
+        final CompletableFuture<Void> third = jambel.setDefaultBlinkTimes(100, 200);
+        CompletableFuture.allOf(first, second, third).join();
+
+        final InOrder inOrder = Mockito.inOrder(mockedJambel, mockedRed);
+        inOrder.verify(mockedJambel).reset();
+        inOrder.verify(mockedRed).blink();
+        inOrder.verify(mockedJambel).setDefaultBlinkTimes(100, 200);
+    }
+
+    @Test
+    void failedConnectIsRetried() throws JambelException {
+        Mockito.doThrow(new JambelConnectException("refused"))
+            .doNothing()
+            .when(mockedRed).on();
+
+        fixture.red().on().join();
+
+        Mockito.verify(mockedRed, Mockito.times(2)).on();
+    }
+
+    @Test
+    void connectRetriesAreLimited() throws JambelException {
+        Mockito.doThrow(new JambelConnectException("refused")).when(mockedJambel).reset();
+        fixture.setNumberOfConnectRetries(2);
+
+        final CompletionException e = assertThrows(CompletionException.class,
+            () -> fixture.reset().join());
+        assertTrue(e.getCause() instanceof JambelConnectException);
+        Mockito.verify(mockedJambel, Mockito.times(3)).reset();
+    }
+
+    @Test
+    void otherErrorsAreNotRetried() throws JambelException {
+        Mockito.doThrow(new JambelResponseException("broken")).when(mockedJambel).testConnection();
+
+        final CompletionException e = assertThrows(CompletionException.class,
+            () -> fixture.testConnection().join());
+        assertTrue(e.getCause() instanceof JambelResponseException);
+        Mockito.verify(mockedJambel, Mockito.times(1)).testConnection();
+    }
+}
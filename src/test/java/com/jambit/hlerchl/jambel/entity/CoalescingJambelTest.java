@@ -0,0 +1,152 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import com.jambit.hlerchl.jambel.exceptions.JambelIoException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescingJambelTest {
+
+    private JambelCommLink mockedLink;
+    private RawJambel rawJambel;
+    private CoalescingJambel fixture;
+
+    @BeforeEach
+    void setupFixture() throws JambelException {
+        mockedLink = Mockito.mock(JambelCommLink.class);
+        Mockito.doThrow(new JambelIoException("Wrong command sent"))
+            .when(mockedLink).sendCommand(Mockito.anyString());
+        rawJambel = new RawJambel(mockedLink, 1, 2, 3);
+        fixture = new CoalescingJambel(rawJambel, 50);
+    }
+
+    @Test
+    void modeChangesOfAllLightsAreMergedIntoSetAll() throws JambelException {
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("set_all=2,1,0,0");
+
+        CompletableFuture.allOf(
+            fixture.submitMode(fixture.red(), Jambel.LightStatus.BLINK),
+            fixture.submitMode(fixture.yellow(), Jambel.LightStatus.ON),
+            fixture.submitMode(fixture.green(), Jambel.LightStatus.OFF)
+        ).join();
+
+        Mockito.verify(mockedLink).sendCommand("set_all=2,1,0,0");
+        Mockito.verifyNoMoreInteractions(mockedLink);
+    }
+
+    @Test
+    void lastModeOfALightWins() throws JambelException {
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("set_all=3,4,0,0");
+
+        CompletableFuture.allOf(
+            fixture.submitMode(fixture.red(), Jambel.LightStatus.BLINK),
+            fixture.submitMode(fixture.yellow(), Jambel.LightStatus.BLINK_INVERSE),
+            fixture.submitMode(fixture.green(), Jambel.LightStatus.OFF),
+            fixture.submitMode(fixture.red(), Jambel.LightStatus.FLASH)
+        ).join();
+
+        Mockito.verify(mockedLink).sendCommand("set_all=3,4,0,0");
+        Mockito.verifyNoMoreInteractions(mockedLink);
+    }
+
+    @Test
+    void unknownModesFallBackToOneBatch() throws JambelException {
+        Mockito.doReturn(Arrays.asList("OK", "OK"))
+            .when(mockedLink).sendCommands(Arrays.asList("set=1,flash", "set=3,on"));
+
+        CompletableFuture.allOf(
+            fixture.submitMode(fixture.red(), Jambel.LightStatus.FLASH),
+            fixture.submitMode(fixture.green(), Jambel.LightStatus.ON)
+        ).join();
+
+        Mockito.verify(mockedLink).sendCommands(Arrays.asList("set=1,flash", "set=3,on"));
+        Mockito.verifyNoMoreInteractions(mockedLink);
+    }
+
+    @Test
+    void knownModesAllowSetAllForSomeLights() throws JambelException {
+        rawJambel.setShadowStateEnabled(true);
+        Mockito.doReturn("status=0,1,0,0,0").when(mockedLink).sendCommand("status");
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("set_all=3,1,2,0");
+        rawJambel.resyncShadowState();
+
+        CompletableFuture.allOf(
+            fixture.submitMode(fixture.red(), Jambel.LightStatus.FLASH),
+            fixture.submitMode(fixture.green(), Jambel.LightStatus.BLINK)
+        ).join();
+
+        Mockito.verify(mockedLink).sendCommand("set_all=3,1,2,0");
+    }
+
+    @Test
+    void failureIsReportedToAllCallers() {
+        final CompletableFuture<Void> red = fixture.submitMode(fixture.red(), Jambel.LightStatus.ON);
+        final CompletableFuture<Void> yellow = fixture.submitMode(fixture.yellow(), Jambel.LightStatus.ON);
+        final CompletableFuture<Void> green = fixture.submitMode(fixture.green(), Jambel.LightStatus.ON);
+
+        for (CompletableFuture<Void> caller : Arrays.asList(red, yellow, green)) {
+            final CompletionException e = assertThrows(CompletionException.class, caller::join);
+            assertTrue(e.getCause() instanceof JambelIoException);
+        }
+    }
+
+    @Test
+    void blockingSetModeWaitsForFlush() throws JambelException {
+        Mockito.doReturn(Arrays.asList("OK"))
+            .when(mockedLink).sendCommands(Arrays.asList("set=2,blink"));
+
+        fixture.yellow().blink();
+
+        Mockito.verify(mockedLink).sendCommands(Arrays.asList("set=2,blink"));
+    }
+
+    @Test
+    void rejectedFlushFailsCallers() throws JambelException {
+        final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            fixture = new CoalescingJambel(rawJambel, 10, task -> {
+                throw new RejectedExecutionException("shut down");
+            }, timer);
+
+            assertTimeoutPreemptively(Duration.ofSeconds(2),
+                () -> assertThrows(JambelException.class, () -> fixture.red().on()));
+
+            // never sent on the timer thread
+            Mockito.verifyNoInteractions(mockedLink);
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectedTimerFailsSubmit() throws JambelException {
+        final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        timer.shutdown();
+        fixture = new CoalescingJambel(rawJambel, 10, Runnable::run, timer);
+
+        final CompletableFuture<Void> submitted =
+            fixture.submitMode(fixture.red(), Jambel.LightStatus.ON);
+
+        final CompletionException e = assertThrows(CompletionException.class, submitted::join);
+        assertTrue(e.getCause() instanceof JambelException);
+        Mockito.verifyNoInteractions(mockedLink);
+
+        // a later submit isn't stuck behind the failed one
+        assertThrows(CompletionException.class,
+            () -> fixture.submitMode(fixture.green(), Jambel.LightStatus.ON).join());
+    }
+}
@@ -0,0 +1,73 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.JambelCommand;
+import com.jambit.hlerchl.jambel.exceptions.JambelCompileException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link JambelCommandCompiler} with the former regex based
+ * implementation ({@link RegexJambelCommandCompiler}). Run {@link #main} to
+ * get the allocations per compiled command as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JambelCommandCompilerBenchmark {
+
+    @Param({"reset", "green on_for 2000", "set_ryg blink_inverse off on",
+        "  yellow   set_on_off_times 300 200  "})
+    public String command;
+
+    private Jambel jambel;
+
+    @Setup
+    public void createJambel() {
+        jambel = new JambelRedOnTop(new JambelCommLink() {
+            @Override
+            public void setConnectTimeout(int milliSeconds) {
+            }
+
+            @Override
+            public String sendCommand(String command) {
+                return "OK";
+            }
+        });
+    }
+
+    @Benchmark
+    public JambelCommand tokenizer() throws JambelCompileException {
+        return JambelCommandCompiler.compile(jambel, command);
+    }
+
+    @Benchmark
+    public JambelCommand regexSplit() throws JambelCompileException {
+        return RegexJambelCommandCompiler.compile(jambel, command);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(JambelCommandCompilerBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
@@ -7,6 +7,10 @@ import com.jambit.hlerchl.jambel.exceptions.JambelException;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class JambelCommandCompilerTest {
@@ -58,6 +62,71 @@ class JambelCommandCompilerTest {
             () -> JambelCommandCompiler.compile(mockedJambel, "set_blink_times 100 3a4"));
     }
 
+    @Test
+    void errorPointsAtFailingColumn() {
+        final JambelCompileException badNumber = assertThrows(JambelCompileException.class,
+            () -> JambelCommandCompiler.compile(mockedJambel, "set_blink_times 100 3a4"));
+        assertEquals("Invalid off time (at column 22 of 'set_blink_times 100 3a4')",
+            badNumber.getMessage());
+
+        final JambelCompileException badMode = assertThrows(JambelCompileException.class,
+            () -> JambelCommandCompiler.compile(mockedJambel, "set_ryg on  blonk off"));
+        assertEquals("Unknown light mode 'blonk' (at column 13 of 'set_ryg on  blonk off')",
+            badMode.getMessage());
+
+        final JambelCompileException tooMany = assertThrows(JambelCompileException.class,
+            () -> JambelCommandCompiler.compile(mockedJambel, " reset  now"));
+        assertEquals("Command 'reset' is expected to have no parameters"
+            + " (at column 9 of ' reset  now')", tooMany.getMessage());
+    }
+
+    @Test
+    void surplusParameterOfModeCommandIsIgnored() throws JambelException {
+        Mockito.doReturn(mockedRed).when(mockedJambel).red();
+
+        JambelCommandCompiler.compile(mockedJambel, "red on 100").execute();
+
+        Mockito.verify(mockedJambel).red();
+        Mockito.verify(mockedRed).on();
+        Mockito.verifyNoMoreInteractions(mockedJambel);
+        Mockito.verifyNoMoreInteractions(mockedRed);
+    }
+
+    /**
+     * The tokenizer accepts exactly the commands the former regex based compiler accepted.
+     */
+    @Test
+    void acceptsSameCommandsAsRegexCompiler() {
+        Mockito.doReturn(mockedRed).when(mockedJambel).red();
+        Mockito.doReturn(mockedYellow).when(mockedJambel).yellow();
+        Mockito.doReturn(mockedGreen).when(mockedJambel).green();
+
+        final List<String> commands = Arrays.asList(
+            "", " ", "reset", " reset ", "reset now", "test_connection", "test_connection 1",
+            "set_blink_times 100 200", "set_blink_times +100 -200", "set_blink_times 100",
+            "set_blink_times 100 200 300", "set_blink_times 1a 200", "set_blink_times - 200",
+            "set_blink_times 100 2147483648", "set_blink_times \u0661\u0660 200",
+            "red", "red on", "red  on  100", "yellow off now", "green blink 1 2", "red flash x",
+            "green blink_inverse", "red shine", "red on_for", "red on_for 100",
+            "red on_for 100 200", "red on_for 1e3", "red set_on_off_times 100 200",
+            "red set_on_off_times 100", "red set_on_off_times 100 200 300",
+            "set_ryg on off blink", "set_ryg ON Off Flash", "set_ryg on off", "set_ryg on off x",
+            "set_ryg on off blink flash", "blue on", "RESET");
+        for (String command : commands) {
+            assertEquals(compiles(() -> RegexJambelCommandCompiler.compile(mockedJambel, command)),
+                compiles(() -> JambelCommandCompiler.compile(mockedJambel, command)),
+                "'" + command + "'");
+        }
+    }
+
+    @Test
+    void tooLargeNumberThrows() {
+        Mockito.doReturn(mockedRed).when(mockedJambel).red();
+
+        assertThrows(JambelCompileException.class,
+            () -> JambelCommandCompiler.compile(mockedJambel, "red on_for 2147483648"));
+    }
+
     @Test
     void setDefaultBlinkTimes() throws JambelException {
         JambelCommandCompiler.compile(mockedJambel, "set_blink_times 100 120").execute();
@@ -226,4 +295,17 @@ class JambelCommandCompilerTest {
             Jambel.LightStatus.ON, Jambel.LightStatus.BLINK, Jambel.LightStatus.FLASH);
         Mockito.verifyNoMoreInteractions(mockedJambel);
     }
+
+    private interface Compilation {
+        void run() throws JambelCompileException;
+    }
+
+    private static boolean compiles(Compilation compilation) {
+        try {
+            compilation.run();
+            return true;
+        } catch (JambelCompileException e) {
+            return false;
+        }
+    }
 }
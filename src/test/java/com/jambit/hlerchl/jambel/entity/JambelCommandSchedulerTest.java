@@ -0,0 +1,120 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.JambelModule;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import com.jambit.hlerchl.jambel.exceptions.JambelIoException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.jambit.hlerchl.jambel.Jambel.LightStatus.FLASH;
+import static com.jambit.hlerchl.jambel.Jambel.LightStatus.OFF;
+import static com.jambit.hlerchl.jambel.Jambel.LightStatus.ON;
+import static com.jambit.hlerchl.jambel.entity.JambelCommandScheduler.Priority.ALERT;
+import static com.jambit.hlerchl.jambel.entity.JambelCommandScheduler.Priority.WRITE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JambelCommandSchedulerTest {
+
+    // the queue is drained only when the test runs the collected tasks
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final Jambel mockedJambel = Mockito.mock(Jambel.class);
+    private final JambelModule mockedRed = Mockito.mock(JambelModule.class);
+    private final JambelModule mockedYellow = Mockito.mock(JambelModule.class);
+    private final JambelModule mockedGreen = Mockito.mock(JambelModule.class);
+    private JambelCommandScheduler fixture;
+
+    @BeforeEach
+    void setupFixture() throws JambelException {
+        Mockito.doReturn(mockedRed).when(mockedJambel).red();
+        Mockito.doReturn(mockedYellow).when(mockedJambel).yellow();
+        Mockito.doReturn(mockedGreen).when(mockedJambel).green();
+        Mockito.doReturn(new Jambel.Status(OFF, OFF, OFF)).when(mockedJambel).status();
+        fixture = new JambelCommandScheduler(mockedJambel, tasks::add);
+    }
+
+    @Test
+    void alertsOvertakeReadsAndWrites() throws JambelException {
+        fixture.status();
+        fixture.setMode(WRITE, mockedYellow, ON);
+        fixture.setMode(ALERT, mockedRed, FLASH);
+        assertEquals(3, fixture.getQueueDepth());
+
+        runTasks();
+
+        final InOrder inOrder = Mockito.inOrder(mockedJambel, mockedRed, mockedYellow);
+        inOrder.verify(mockedRed).setMode(FLASH);
+        inOrder.verify(mockedYellow).setMode(ON);
+        inOrder.verify(mockedJambel).status();
+        assertEquals(0, fixture.getQueueDepth());
+    }
+
+    @Test
+    void supersededModeChangeIsDropped() throws JambelException {
+        final CompletableFuture<Void> first = fixture.setMode(WRITE, mockedGreen, ON);
+        final CompletableFuture<Void> second = fixture.setMode(WRITE, mockedGreen, OFF);
+
+        runTasks();
+
+        first.join();
+        second.join();
+        Mockito.verify(mockedGreen).setMode(OFF);
+        Mockito.verifyNoMoreInteractions(mockedGreen);
+        assertEquals(1, fixture.getNumberOfSupersededCommands());
+    }
+
+    @Test
+    void setAllLightsSupersedesModeChanges() throws JambelException {
+        fixture.setMode(WRITE, mockedRed, ON);
+        fixture.setMode(WRITE, mockedYellow, ON);
+        fixture.setAllLights(WRITE, OFF, OFF, FLASH);
+
+        runTasks();
+
+        Mockito.verify(mockedJambel).setAllLights(OFF, OFF, FLASH);
+        Mockito.verifyNoInteractions(mockedRed, mockedYellow);
+        assertEquals(2, fixture.getNumberOfSupersededCommands());
+    }
+
+    @Test
+    void supersedingCommandKeepsAlertPriority() throws JambelException {
+        fixture.status();
+        fixture.setMode(ALERT, mockedRed, FLASH);
+        fixture.setMode(WRITE, mockedRed, ON);
+
+        runTasks();
+
+        final InOrder inOrder = Mockito.inOrder(mockedJambel, mockedRed);
+        inOrder.verify(mockedRed).setMode(ON);
+        inOrder.verify(mockedJambel).status();
+    }
+
+    @Test
+    void failureIsReportedToSupersededCallers() throws JambelException {
+        Mockito.doThrow(new JambelIoException("broken link")).when(mockedRed).setMode(OFF);
+        final CompletableFuture<Void> first = fixture.setMode(WRITE, mockedRed, ON);
+        final CompletableFuture<Void> second = fixture.setMode(WRITE, mockedRed, OFF);
+
+        runTasks();
+
+        assertTrue(assertThrows(CompletionException.class, first::join).getCause()
+            instanceof JambelIoException);
+        assertTrue(assertThrows(CompletionException.class, second::join).getCause()
+            instanceof JambelIoException);
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+}
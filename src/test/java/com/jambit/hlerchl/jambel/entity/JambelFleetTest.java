@@ -0,0 +1,207 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.JambelModule;
+import com.jambit.hlerchl.jambel.exceptions.JambelCompileException;
+import com.jambit.hlerchl.jambel.exceptions.JambelConnectException;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jambit.hlerchl.jambel.Jambel.LightStatus.OFF;
+import static com.jambit.hlerchl.jambel.Jambel.LightStatus.ON;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JambelFleetTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void operationIsAppliedToAllJambelsWithBoundedParallelism() throws JambelException {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<Jambel> jambels = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            final Jambel jambel = Mockito.mock(Jambel.class);
+            Mockito.doAnswer(invocation -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return null;
+            }).when(jambel).setAllLights(ON, OFF, OFF);
+            jambels.add(jambel);
+        }
+        final JambelFleet fleet = new JambelFleet(jambels, executor);
+        fleet.setMaxParallelism(3);
+
+        final JambelFleet.FleetResult result = fleet.setAllLights(ON, OFF, OFF);
+
+        assertTrue(result.allSucceeded());
+        assertEquals(jambels, result.getJambels());
+        assertEquals(jambels.size(), result.getResults().size());
+        assertTrue(maxRunning.get() > 1, "no parallelism at all");
+        assertTrue(maxRunning.get() <= 3, maxRunning.get() + " jambels at once");
+        for (Jambel jambel : jambels) {
+            Mockito.verify(jambel).setAllLights(ON, OFF, OFF);
+        }
+    }
+
+    @Test
+    void failuresAreReportedPerJambel() throws JambelException {
+        final Jambel good = Mockito.mock(Jambel.class);
+        final Jambel bad = Mockito.mock(Jambel.class);
+        final JambelConnectException failure = new JambelConnectException("refused");
+        Mockito.doThrow(failure).when(bad).reset();
+        final JambelFleet fleet = new JambelFleet(Arrays.asList(good, bad), executor);
+
+        final JambelFleet.FleetResult result = fleet.reset();
+
+        assertFalse(result.allSucceeded());
+        assertEquals(JambelFleet.Outcome.SUCCEEDED, result.getResult(good).getOutcome());
+        assertEquals(JambelFleet.Outcome.FAILED, result.getResult(bad).getOutcome());
+        assertSame(failure, result.getResult(bad).getFailure());
+        assertEquals(Collections.singletonList(bad), result.getUnsuccessfulJambels());
+    }
+
+    /**
+     * Jambels which are equal (e.g. two objects for the same device) still get a result each.
+     * @throws JambelException should never happen
+     */
+    @Test
+    void equalJambelsAreReportedSeparately() throws JambelException {
+        final Jambel good = new EqualJambel(Mockito.mock(Jambel.class));
+        final Jambel badDelegate = Mockito.mock(Jambel.class);
+        Mockito.doThrow(new JambelConnectException("refused")).when(badDelegate).reset();
+        final Jambel bad = new EqualJambel(badDelegate);
+        final JambelFleet fleet = new JambelFleet(Arrays.asList(good, bad), executor);
+
+        final JambelFleet.FleetResult result = fleet.reset();
+
+        assertEquals(2, result.getResults().size());
+        assertEquals(JambelFleet.Outcome.SUCCEEDED, result.getResult(good).getOutcome());
+        assertEquals(JambelFleet.Outcome.FAILED, result.getResult(bad).getOutcome());
+        assertEquals(1, result.getUnsuccessfulJambels().size());
+        assertSame(bad, result.getUnsuccessfulJambels().get(0));
+    }
+
+    @Test
+    void slowJambelsTimeOutAndPendingOnesAreSkipped() throws JambelException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Jambel stuck = Mockito.mock(Jambel.class);
+        Mockito.doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(stuck).reset();
+        final Jambel pending = Mockito.mock(Jambel.class);
+        final JambelFleet fleet = new JambelFleet(Arrays.asList(stuck, pending), executor);
+        fleet.setMaxParallelism(1);
+        fleet.setDeadlineMsec(100);
+
+        final long start = System.nanoTime();
+        final JambelFleet.FleetResult result = fleet.reset();
+        final long elapsedMsec = (System.nanoTime() - start) / 1000000;
+        release.countDown();
+
+        assertTrue(elapsedMsec < 1000, "returned after " + elapsedMsec + " msec");
+        assertEquals(JambelFleet.Outcome.TIMED_OUT, result.getResult(stuck).getOutcome());
+        assertEquals(JambelFleet.Outcome.TIMED_OUT, result.getResult(pending).getOutcome());
+        Mockito.verify(stuck, Mockito.timeout(1000)).reset();
+        Mockito.verify(pending, Mockito.after(100).never()).reset();
+    }
+
+    @Test
+    void malformedCommandFailsBeforeAnyJambelIsContacted() {
+        final Jambel jambel = Mockito.mock(Jambel.class);
+        final JambelFleet fleet = new JambelFleet(Collections.singletonList(jambel), executor);
+
+        assertThrows(JambelCompileException.class, () -> fleet.execute("purple on"));
+        Mockito.verifyNoInteractions(jambel);
+    }
+
+    /**
+     * A jambel which claims to be equal to all others of its kind (like value
+     * objects describing the same device would).
+     */
+    private static final class EqualJambel implements Jambel {
+        private final Jambel delegate;
+
+        EqualJambel(Jambel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void reset() throws JambelException {
+            delegate.reset();
+        }
+
+        @Override
+        public String version() throws JambelException {
+            return delegate.version();
+        }
+
+        @Override
+        public void setDefaultBlinkTimes(int msecOn, int msecOff) throws JambelException {
+            delegate.setDefaultBlinkTimes(msecOn, msecOff);
+        }
+
+        @Override
+        public Status status() throws JambelException {
+            return delegate.status();
+        }
+
+        @Override
+        public void testConnection() throws JambelException {
+            delegate.testConnection();
+        }
+
+        @Override
+        public JambelModule green() {
+            return delegate.green();
+        }
+
+        @Override
+        public JambelModule yellow() {
+            return delegate.yellow();
+        }
+
+        @Override
+        public JambelModule red() {
+            return delegate.red();
+        }
+
+        @Override
+        public void setAllLights(LightStatus red, LightStatus yellow, LightStatus green)
+            throws JambelException {
+            delegate.setAllLights(red, yellow, green);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof EqualJambel;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+    }
+}
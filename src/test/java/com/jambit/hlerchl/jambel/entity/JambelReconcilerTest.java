@@ -0,0 +1,149 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.JambelModule;
+import com.jambit.hlerchl.jambel.exceptions.JambelConnectException;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jambit.hlerchl.jambel.Jambel.LightStatus.BLINK;
+import static com.jambit.hlerchl.jambel.Jambel.LightStatus.FLASH;
+import static com.jambit.hlerchl.jambel.Jambel.LightStatus.OFF;
+import static com.jambit.hlerchl.jambel.Jambel.LightStatus.ON;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JambelReconcilerTest {
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final Jambel mockedJambel = Mockito.mock(Jambel.class);
+    private final JambelModule mockedRed = Mockito.mock(JambelModule.class);
+    private final JambelModule mockedYellow = Mockito.mock(JambelModule.class);
+    private final JambelModule mockedGreen = Mockito.mock(JambelModule.class);
+    private JambelReconciler fixture;
+
+    @BeforeEach
+    void setupFixture() throws JambelException {
+        Mockito.doReturn(mockedRed).when(mockedJambel).red();
+        Mockito.doReturn(mockedYellow).when(mockedJambel).yellow();
+        Mockito.doReturn(mockedGreen).when(mockedJambel).green();
+        Mockito.doReturn(new Jambel.Status(OFF, OFF, OFF)).when(mockedJambel).status();
+        // nothing runs in the background; each test drives the reconciler itself
+        fixture = new JambelReconciler(mockedJambel, command -> { }, timer);
+    }
+
+    @Test
+    void nothingIsSentWithoutTarget() throws JambelException {
+        assertFalse(fixture.reconcileNow());
+        Mockito.verifyNoInteractions(mockedJambel);
+    }
+
+    @Test
+    void nothingIsSentIfJambelIsInTargetState() throws JambelException {
+        fixture.setTarget(new Jambel.Status(OFF, OFF, OFF));
+
+        assertFalse(fixture.reconcileNow());
+        Mockito.verify(mockedJambel, Mockito.never()).setAllLights(
+            Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.verifyNoInteractions(mockedRed, mockedYellow, mockedGreen);
+    }
+
+    @Test
+    void singleDifferenceIsFixedWithSingleCommand() throws JambelException {
+        fixture.setTarget(new Jambel.Status(OFF, BLINK, OFF));
+
+        assertTrue(fixture.reconcileNow());
+        Mockito.verify(mockedYellow).setMode(BLINK);
+        Mockito.verify(mockedJambel, Mockito.never()).setAllLights(
+            Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void severalDifferencesAreFixedWithSetAll() throws JambelException {
+        fixture.setTarget(new Jambel.Status(ON, OFF, FLASH));
+
+        assertTrue(fixture.reconcileNow());
+        Mockito.verify(mockedJambel).setAllLights(ON, OFF, FLASH);
+        Mockito.verifyNoInteractions(mockedRed, mockedYellow, mockedGreen);
+    }
+
+    @Test
+    void onlyLatestTargetIsSent() throws JambelException {
+        fixture.setTarget(new Jambel.Status(ON, OFF, OFF));
+        fixture.setTarget(new Jambel.Status(OFF, ON, OFF));
+        fixture.setTarget(new Jambel.Status(OFF, OFF, ON));
+
+        fixture.reconcileNow();
+        Mockito.verify(mockedGreen).setMode(ON);
+        Mockito.verifyNoInteractions(mockedRed, mockedYellow);
+    }
+
+    @Test
+    void blinkTimesAreSentOnlyWhenChanged() throws JambelException {
+        final JambelReconciler.DesiredState target = JambelReconciler.DesiredState.builder()
+            .lights(new Jambel.Status(OFF, OFF, OFF))
+            .defaultBlinkTimes(new JambelReconciler.BlinkTimes(100, 300))
+            .redBlinkTimes(new JambelReconciler.BlinkTimes(200, 400))
+            .build();
+        fixture.setTarget(target);
+
+        assertTrue(fixture.reconcileNow());
+        assertFalse(fixture.reconcileNow());
+
+        Mockito.verify(mockedJambel, Mockito.times(1)).setDefaultBlinkTimes(100, 300);
+        Mockito.verify(mockedRed, Mockito.times(1)).setBlinkTimes(200, 400);
+        Mockito.verifyNoInteractions(mockedYellow, mockedGreen);
+    }
+
+    @Test
+    void blinkTimesAreResentAfterFailure() throws JambelException {
+        final JambelReconciler.DesiredState target = JambelReconciler.DesiredState.builder()
+            .lights(new Jambel.Status(OFF, OFF, OFF))
+            .defaultBlinkTimes(new JambelReconciler.BlinkTimes(100, 300))
+            .build();
+        fixture.setTarget(target);
+        fixture.reconcileNow();
+
+        Mockito.doThrow(new JambelConnectException("refused"))
+            .doReturn(new Jambel.Status(OFF, OFF, OFF))
+            .when(mockedJambel).status();
+        assertThrows(JambelConnectException.class, () -> fixture.reconcileNow());
+        fixture.reconcileNow();
+
+        Mockito.verify(mockedJambel, Mockito.times(2)).setDefaultBlinkTimes(100, 300);
+    }
+
+    @Test
+    void reconcilerConvergesInBackground() throws JambelException {
+        final JambelReconciler background = new JambelReconciler(
+            mockedJambel, Runnable::run, timer);
+        background.setTarget(new Jambel.Status(BLINK, OFF, ON));
+
+        Mockito.verify(mockedJambel, Mockito.timeout(1000)).setAllLights(BLINK, OFF, ON);
+        background.close();
+    }
+
+    @Test
+    void rejectedRunIsRetriedLater() throws JambelException {
+        final AtomicInteger attempts = new AtomicInteger();
+        final JambelReconciler background = new JambelReconciler(mockedJambel, task -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RejectedExecutionException("busy");
+            }
+            task.run();
+        }, timer);
+        background.setMinBackoffMsec(10);
+        background.setTarget(new Jambel.Status(BLINK, OFF, ON));
+
+        Mockito.verify(mockedJambel, Mockito.timeout(1000)).setAllLights(BLINK, OFF, ON);
+        background.close();
+    }
+}
@@ -0,0 +1,158 @@
+package com.jambit.hlerchl.jambel.entity;
+
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.exceptions.JambelConnectException;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jambit.hlerchl.jambel.Jambel.LightStatus.BLINK;
+import static com.jambit.hlerchl.jambel.Jambel.LightStatus.OFF;
+import static com.jambit.hlerchl.jambel.Jambel.LightStatus.ON;
+
+class JambelWatcherTest {
+
+    private static final Jambel.Status ALL_OFF = new Jambel.Status(OFF, OFF, OFF);
+    private static final Jambel.Status RED_ON = new Jambel.Status(ON, OFF, OFF);
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final Jambel mockedJambel = Mockito.mock(Jambel.class);
+    private JambelWatcher fixture;
+
+    @BeforeEach
+    void setupFixture() {
+        fixture = new JambelWatcher(Runnable::run, timer);
+        fixture.setMinPollIntervalMsec(10);
+        fixture.setMaxPollIntervalMsec(40);
+    }
+
+    @AfterEach
+    void closeFixture() {
+        fixture.close();
+        timer.shutdownNow();
+    }
+
+    @Test
+    void listenerIsNotifiedOnlyAboutChanges() throws JambelException {
+        Mockito.doReturn(ALL_OFF)
+            .doReturn(ALL_OFF)
+            .doReturn(RED_ON)
+            .when(mockedJambel).status();
+        final JambelWatcher.Listener listener = Mockito.mock(JambelWatcher.Listener.class);
+
+        fixture.subscribe(mockedJambel, listener);
+
+        Mockito.verify(listener, Mockito.timeout(1000))
+            .statusChanged(mockedJambel, ALL_OFF, RED_ON);
+        Mockito.verify(mockedJambel, Mockito.timeout(1000).atLeast(5)).status();
+        Mockito.verify(listener).statusChanged(mockedJambel, null, ALL_OFF);
+        Mockito.verifyNoMoreInteractions(listener);
+    }
+
+    @Test
+    void listenersOfSameJambelShareOnePoll() throws JambelException {
+        Mockito.doReturn(ALL_OFF).when(mockedJambel).status();
+        fixture.setMinPollIntervalMsec(60000);
+        final JambelWatcher.Listener first = Mockito.mock(JambelWatcher.Listener.class);
+        final JambelWatcher.Listener second = Mockito.mock(JambelWatcher.Listener.class);
+
+        fixture.subscribe(mockedJambel, first);
+        Mockito.verify(first, Mockito.timeout(1000)).statusChanged(mockedJambel, null, ALL_OFF);
+        fixture.subscribe(mockedJambel, second);
+
+        // the second listener learns the known status without another poll
+        Mockito.verify(second, Mockito.timeout(1000)).statusChanged(mockedJambel, null, ALL_OFF);
+        Mockito.verify(mockedJambel, Mockito.times(1)).status();
+    }
+
+    @Test
+    void failedPollsAreReported() throws JambelException {
+        final JambelConnectException failure = new JambelConnectException("refused");
+        Mockito.doThrow(failure)
+            .doReturn(new Jambel.Status(OFF, BLINK, OFF))
+            .when(mockedJambel).status();
+        final JambelWatcher.Listener listener = Mockito.mock(JambelWatcher.Listener.class);
+
+        fixture.subscribe(mockedJambel, listener);
+
+        Mockito.verify(listener, Mockito.timeout(1000)).pollFailed(mockedJambel, failure);
+        Mockito.verify(listener, Mockito.timeout(1000))
+            .statusChanged(mockedJambel, null, new Jambel.Status(OFF, BLINK, OFF));
+    }
+
+    @Test
+    void pollingGoesOnAfterUnexpectedException() throws JambelException {
+        Mockito.doThrow(new IllegalStateException("broken jambel"))
+            .doReturn(RED_ON)
+            .when(mockedJambel).status();
+        final JambelWatcher.Listener listener = Mockito.mock(JambelWatcher.Listener.class);
+
+        fixture.subscribe(mockedJambel, listener);
+
+        Mockito.verify(listener, Mockito.timeout(1000))
+            .pollFailed(Mockito.eq(mockedJambel), Mockito.any(JambelException.class));
+        Mockito.verify(listener, Mockito.timeout(1000)).statusChanged(mockedJambel, null, RED_ON);
+    }
+
+    @Test
+    void instancesOfSameDeviceShareOnePoll() throws JambelException {
+        final Jambel wrapper = Mockito.mock(Jambel.class);
+        Mockito.doReturn("jambel:10001").when(mockedJambel).getEndpoint();
+        Mockito.doReturn("jambel:10001").when(wrapper).getEndpoint();
+        Mockito.doReturn(ALL_OFF).when(mockedJambel).status();
+        fixture.setMinPollIntervalMsec(60000);
+        final JambelWatcher.Listener first = Mockito.mock(JambelWatcher.Listener.class);
+        final JambelWatcher.Listener second = Mockito.mock(JambelWatcher.Listener.class);
+
+        fixture.subscribe(mockedJambel, first);
+        Mockito.verify(first, Mockito.timeout(1000)).statusChanged(mockedJambel, null, ALL_OFF);
+        fixture.subscribe(wrapper, second);
+
+        // each listener is told about the instance it subscribed with
+        Mockito.verify(second, Mockito.timeout(1000)).statusChanged(wrapper, null, ALL_OFF);
+        Mockito.verify(mockedJambel, Mockito.times(1)).status();
+        Mockito.verify(wrapper, Mockito.never()).status();
+    }
+
+    @Test
+    void pollingGoesOnAfterRejectedExecution() throws JambelException {
+        final AtomicInteger attempts = new AtomicInteger();
+        fixture.close();
+        fixture = new JambelWatcher(task -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RejectedExecutionException("busy");
+            }
+            task.run();
+        }, timer);
+        fixture.setMinPollIntervalMsec(10);
+        Mockito.doReturn(RED_ON).when(mockedJambel).status();
+        final JambelWatcher.Listener listener = Mockito.mock(JambelWatcher.Listener.class);
+
+        fixture.subscribe(mockedJambel, listener);
+
+        Mockito.verify(listener, Mockito.timeout(1000)).statusChanged(mockedJambel, null, RED_ON);
+    }
+
+    @Test
+    void pollingStopsWithLastListener() throws Exception {
+        Mockito.doReturn(ALL_OFF).when(mockedJambel).status();
+        final JambelWatcher.Listener listener = Mockito.mock(JambelWatcher.Listener.class);
+
+        fixture.subscribe(mockedJambel, listener);
+        Mockito.verify(listener, Mockito.timeout(1000)).statusChanged(mockedJambel, null, ALL_OFF);
+        fixture.unsubscribe(mockedJambel, listener);
+
+        // wait for a poll which might have been on its way already
+        Thread.sleep(100);
+        Mockito.clearInvocations(mockedJambel);
+        Thread.sleep(100);
+        Mockito.verify(mockedJambel, Mockito.never()).status();
+    }
+}
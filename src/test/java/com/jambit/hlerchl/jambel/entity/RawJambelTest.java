@@ -10,9 +10,15 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class RawJambelTest {
@@ -22,7 +28,8 @@ class RawJambelTest {
 
     @BeforeEach
     void setupCommLinkMock() throws JambelException {
-        mockedLink = Mockito.mock(JambelCommLink.class);
+        // let the default implementation of sendCommands() delegate to sendCommand()
+        mockedLink = Mockito.mock(JambelCommLink.class, Mockito.CALLS_REAL_METHODS);
         Mockito.doThrow(new JambelIoException("Wrong command sent"))
             .when(mockedLink).sendCommand(Mockito.anyString());
          fixture = new RawJambel(mockedLink, 1, 2, 3);
@@ -39,6 +46,39 @@ class RawJambelTest {
         Mockito.doReturn("OK").when(mockedLink).sendCommand("blink_time_off=300");
 
         fixture.setDefaultBlinkTimes(600, 300);
+
+        Mockito.verify(mockedLink).sendCommands(Arrays.asList("blink_time_on=600", "blink_time_off=300"));
+    }
+
+    @Test
+    void batchIsSentAtOnce() throws JambelException {
+        final List<String> telnetCommands = Arrays.asList(
+            "set=1,blink", "blink_time=2,100,200", "set=3,50", "set_all=1,0,3,0");
+        Mockito.doReturn(Arrays.asList("OK", "OK", "OK", "OK"))
+            .when(mockedLink).sendCommands(telnetCommands);
+
+        final RawJambel rawFixture = (RawJambel) fixture;
+        rawFixture.batch()
+            .setMode(rawFixture.red(), Jambel.LightStatus.BLINK)
+            .setBlinkTimes(rawFixture.yellow(), 100, 200)
+            .on(rawFixture.green(), 50)
+            .setAllLights(Jambel.LightStatus.ON, Jambel.LightStatus.OFF, Jambel.LightStatus.FLASH)
+            .execute();
+
+        Mockito.verify(mockedLink).sendCommands(telnetCommands);
+        Mockito.verifyNoMoreInteractions(mockedLink);
+    }
+
+    @Test
+    void batchFailsIfOneCommandIsNotAcknowledged() throws JambelException {
+        Mockito.doReturn(Arrays.asList("OK", "ERROR"))
+            .when(mockedLink).sendCommands(Arrays.asList("reset", "set=2,on"));
+
+        final RawJambel rawFixture = (RawJambel) fixture;
+        assertThrows(JambelResponseException.class, () -> rawFixture.batch()
+            .reset()
+            .setMode(rawFixture.yellow(), Jambel.LightStatus.ON)
+            .execute());
     }
 
     @Test
@@ -85,17 +125,20 @@ class RawJambelTest {
 
     @Test
     void turnGreen30MSecOn() throws JambelException {
-        expectOkCommand(() -> { fixture.green().on(30); }, "set=3,30");
+        expectOkCommand(() -> { fixture.green().on(30); }, "set=3,30",
+            () -> Mockito.verify(mockedLink).sendCommand("set=", 3, 30));
     }
 
     @Test
     void turnYellow60MSecOn() throws JambelException {
-        expectOkCommand(() -> { fixture.yellow().on(60); }, "set=2,60");
+        expectOkCommand(() -> { fixture.yellow().on(60); }, "set=2,60",
+            () -> Mockito.verify(mockedLink).sendCommand("set=", 2, 60));
     }
 
     @Test
     void turnRed90MSecOn() throws JambelException {
-        expectOkCommand(() -> { fixture.red().on(90); }, "set=1,90");
+        expectOkCommand(() -> { fixture.red().on(90); }, "set=1,90",
+            () -> Mockito.verify(mockedLink).sendCommand("set=", 1, 90));
     }
 
     @Test
@@ -179,7 +222,8 @@ class RawJambelTest {
     void setBlinkTimersForSingleModule() throws JambelException {
         expectOkCommand(() -> {
             fixture.red().setBlinkTimes(800, 400);
-        }, "blink_time=1,800,400");
+        }, "blink_time=1,800,400",
+            () -> Mockito.verify(mockedLink).sendCommand("blink_time=", 1, 800, 400));
     }
 
     @Test
@@ -261,6 +305,181 @@ class RawJambelTest {
         assertThrows(JambelResponseException.class, () -> fixture.status());
     }
 
+    @Test
+    void statusTruncatedResponse() throws JambelException {
+        Mockito.doReturn("status=1,0").when(mockedLink).sendCommand("status");
+
+        assertThrows(JambelResponseException.class, () -> fixture.status());
+    }
+
+    @Test
+    void statusIsCanonicalInstance() throws JambelException {
+        Mockito.doReturn("status=4,3,2,0,0").when(mockedLink).sendCommand("status");
+        final Jambel greenOnTop = new RawJambel(mockedLink, 3, 2, 1);
+        final Jambel.LightStatus inverse = Jambel.LightStatus.BLINK_INVERSE;
+        final Jambel.LightStatus flash = Jambel.LightStatus.FLASH;
+        final Jambel.LightStatus blink = Jambel.LightStatus.BLINK;
+
+        final Jambel.Status expected = Jambel.Status.of(inverse, flash, blink);
+        assertSame(expected, fixture.status());
+        assertSame(expected, fixture.status());
+        assertSame(Jambel.Status.of(blink, flash, inverse), greenOnTop.status());
+        assertEquals(new Jambel.Status(inverse, flash, blink), expected);
+    }
+
+    @Test
+    void shadowStateSuppressesRedundantModeChange() throws JambelException {
+        final RawJambel rawFixture = shadowedFixture();
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("set=1,blink");
+
+        rawFixture.red().blink();
+        rawFixture.red().setMode(Jambel.LightStatus.BLINK);
+
+        Mockito.verify(mockedLink, Mockito.times(1)).sendCommand("set=1,blink");
+    }
+
+    @Test
+    void shadowStateSuppressesRedundantBlinkTimes() throws JambelException {
+        final RawJambel rawFixture = shadowedFixture();
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("blink_time=2,100,200");
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("blink_time_on=300");
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("blink_time_off=400");
+
+        rawFixture.yellow().setBlinkTimes(100, 200);
+        rawFixture.yellow().setBlinkTimes(100, 200);
+        rawFixture.setDefaultBlinkTimes(300, 400);
+        rawFixture.setDefaultBlinkTimes(300, 400);
+
+        Mockito.verify(mockedLink, Mockito.times(1)).sendCommand("blink_time=2,100,200");
+        Mockito.verify(mockedLink, Mockito.times(1)).sendCommand("blink_time_on=300");
+        Mockito.verify(mockedLink, Mockito.times(1)).sendCommand("blink_time_off=400");
+    }
+
+    @Test
+    void shadowStateIsSyncedFromStatus() throws JambelException {
+        final RawJambel rawFixture = shadowedFixture();
+        Mockito.doReturn("status=1,0,2,0,0").when(mockedLink).sendCommand("status");
+
+        rawFixture.resyncShadowState();
+        rawFixture.red().on();
+        rawFixture.setAllLights(Jambel.LightStatus.ON, Jambel.LightStatus.OFF, Jambel.LightStatus.BLINK);
+
+        Mockito.verify(mockedLink).sendCommand("status");
+        Mockito.verifyNoMoreInteractions(mockedLink);
+    }
+
+    @Test
+    void shadowStateIsInvalidatedByReset() throws JambelException {
+        final RawJambel rawFixture = shadowedFixture();
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("set=3,flash");
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("reset");
+
+        rawFixture.green().flash();
+        rawFixture.reset();
+        rawFixture.green().flash();
+
+        Mockito.verify(mockedLink, Mockito.times(2)).sendCommand("set=3,flash");
+    }
+
+    @Test
+    void shadowStateIsInvalidatedByOnForSomeTime() throws JambelException {
+        final RawJambel rawFixture = shadowedFixture();
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("set=1,on");
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("set=1,500");
+
+        rawFixture.red().on();
+        rawFixture.red().on(500);
+        rawFixture.red().on();
+
+        Mockito.verify(mockedLink, Mockito.times(2)).sendCommand("set=1,on");
+    }
+
+    @Test
+    void shadowStateIsInvalidatedByFailedCommand() throws JambelException {
+        final RawJambel rawFixture = shadowedFixture();
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("set=1,on");
+        Mockito.doThrow(new JambelIoException("broken link"))
+            .when(mockedLink).sendCommand("set=2,on");
+
+        rawFixture.red().on();
+        assertThrows(JambelIoException.class, () -> rawFixture.yellow().on());
+        rawFixture.red().on();
+
+        Mockito.verify(mockedLink, Mockito.times(2)).sendCommand("set=1,on");
+    }
+
+    @Test
+    void cachedStatusIsReusedWithinTtl() throws JambelException {
+        final RawJambel rawFixture = (RawJambel) fixture;
+        rawFixture.setStatusCacheTtlMsec(60000);
+        Mockito.doReturn("status=1,0,2,0,0").when(mockedLink).sendCommand("status");
+
+        final Jambel.Status first = rawFixture.status();
+        final Jambel.Status second = rawFixture.status();
+
+        assertEquals(first, second);
+        Mockito.verify(mockedLink, Mockito.times(1)).sendCommand("status");
+    }
+
+    @Test
+    void statusIsNotCachedByDefault() throws JambelException {
+        Mockito.doReturn("status=1,0,2,0,0").when(mockedLink).sendCommand("status");
+
+        fixture.status();
+        fixture.status();
+
+        Mockito.verify(mockedLink, Mockito.times(2)).sendCommand("status");
+    }
+
+    @Test
+    void cachedStatusIsDiscardedByWrite() throws JambelException {
+        final RawJambel rawFixture = (RawJambel) fixture;
+        rawFixture.setStatusCacheTtlMsec(60000);
+        Mockito.doReturn("status=1,0,2,0,0").when(mockedLink).sendCommand("status");
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("set=2,on");
+
+        rawFixture.status();
+        rawFixture.yellow().on();
+        rawFixture.status();
+
+        Mockito.verify(mockedLink, Mockito.times(2)).sendCommand("status");
+    }
+
+    @Test
+    void concurrentStatusCallsShareOneRequest() throws Exception {
+        final CountDownLatch requestStarted = new CountDownLatch(1);
+        final CountDownLatch releaseResponse = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            requestStarted.countDown();
+            releaseResponse.await(5, TimeUnit.SECONDS);
+            return "status=1,0,2,0,0";
+        }).when(mockedLink).sendCommand("status");
+
+        final CompletableFuture<Jambel.Status> first = CompletableFuture.supplyAsync(this::status);
+        requestStarted.await(5, TimeUnit.SECONDS);
+        final CompletableFuture<Jambel.Status> second = CompletableFuture.supplyAsync(this::status);
+        // give the second caller some time to join the first request
+        Thread.sleep(100);
+        releaseResponse.countDown();
+
+        assertEquals(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        Mockito.verify(mockedLink, Mockito.times(1)).sendCommand("status");
+    }
+
+    private Jambel.Status status() {
+        try {
+            return fixture.status();
+        } catch (JambelException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private RawJambel shadowedFixture() {
+        final RawJambel rawFixture = (RawJambel) fixture;
+        rawFixture.setShadowStateEnabled(true);
+        return rawFixture;
+    }
+
     private void expectOkCommand(JambelCommand command, String telnetCommand) throws JambelException {
         Mockito.doReturn("OK").when(mockedLink).sendCommand(telnetCommand);
 
@@ -269,4 +488,19 @@ class RawJambelTest {
         Mockito.verify(mockedLink).sendCommand(telnetCommand);
         Mockito.verifyNoMoreInteractions(mockedLink);
     }
+
+    /**
+     * Like {@link #expectOkCommand(JambelCommand, String)} for commands with numeric
+     * arguments; they go via a numeric link method (whose default builds the string).
+     */
+    private void expectOkCommand(JambelCommand command, String telnetCommand,
+                                 JambelCommand verifyNumericCall) throws JambelException {
+        Mockito.doReturn("OK").when(mockedLink).sendCommand(telnetCommand);
+
+        command.execute();
+
+        verifyNumericCall.execute();
+        Mockito.verify(mockedLink).sendCommand(telnetCommand);
+        Mockito.verifyNoMoreInteractions(mockedLink);
+    }
 }
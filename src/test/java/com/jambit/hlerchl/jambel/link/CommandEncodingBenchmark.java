@@ -0,0 +1,103 @@
+package com.jambit.hlerchl.jambel.link;
+
+import com.jambit.hlerchl.jambel.Jambel;
+import com.jambit.hlerchl.jambel.entity.JambelRedOnTop;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding commands on its own and the write path from a {@link Jambel}
+ * call through a persistent {@link JambelSocketLink} to a {@link FakeJambelServer}.
+ * Run it with the GC profiler (see {@link #main}).
+ * <p>
+ * The {@code encode*} benchmarks don't touch the network; their
+ * {@code gc.alloc.rate.norm} is about 0 B/op. The link benchmarks compare the
+ * numeric path ({@link #onFor}) with sending the same command as a string
+ * ({@link #onForString}); their allocations are dominated by the socket and by the
+ * fake jambel (which allocates a line per received command on its own thread).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandEncodingBenchmark {
+    private static final Jambel.LightStatus[] MODES = Jambel.LightStatus.values();
+
+    // one of the precomputed commands of RawJambel
+    private static final String SET_ALL_COMMAND = "set_all=2,1,0,0";
+
+    private final CommandEncoder encoder = new CommandEncoder(64);
+    private FakeJambelServer fakeJambel;
+    private JambelSocketLink link;
+    private Jambel jambel;
+    private int round = 0;
+
+    @Setup(Level.Trial)
+    public void startJambel() throws IOException {
+        fakeJambel = FakeJambelServer.answeringOk();
+        fakeJambel.stopRecordingCommands();
+        link = new JambelSocketLink("localhost", fakeJambel.getPort());
+        link.setPersistentConnection(true);
+        jambel = new JambelRedOnTop(link);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopJambel() throws IOException {
+        link.close();
+        fakeJambel.close();
+    }
+
+    @Benchmark
+    public int encodeFixedCommand() {
+        encoder.encode(SET_ALL_COMMAND);
+        return encoder.getBuffer()[encoder.getLength() - 3];
+    }
+
+    @Benchmark
+    public int encodeNumericCommand() {
+        encoder.encode("blink_time=", 2, 100 + (++round % 1000), 300);
+        return encoder.getBuffer()[encoder.getLength() - 3];
+    }
+
+    @Benchmark
+    public void setMode() throws JambelException {
+        jambel.green().setMode(MODES[++round % 5]);
+    }
+
+    @Benchmark
+    public void onFor() throws JambelException {
+        jambel.yellow().on(1000 + (++round % 1000));
+    }
+
+    @Benchmark
+    public String onForString() throws JambelException {
+        return link.sendCommand("set=2," + (1000 + (++round % 1000)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(CommandEncodingBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
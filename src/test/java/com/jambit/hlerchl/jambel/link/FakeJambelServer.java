@@ -0,0 +1,136 @@
+package com.jambit.hlerchl.jambel.link;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A tiny stand-in for a jambel listening on localhost.
+ * <p>
+ * It accepts any number of connections, reads CRLF terminated commands and
+ * answers each of them with the response computed by the given function.
+ * If the function returns {@code null} the command is swallowed (no answer).
+ */
+public class FakeJambelServer implements Closeable {
+    private final ServerSocket serverSocket;
+    private final Function<String, String> responder;
+    private final List<String> receivedCommands = new CopyOnWriteArrayList<>();
+    private final AtomicInteger numberOfConnections = new AtomicInteger();
+    private final List<Socket> openSockets = new CopyOnWriteArrayList<>();
+    private volatile boolean recordingCommands = true;
+
+    public FakeJambelServer(Function<String, String> responder) throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.responder = responder;
+
+        final Thread acceptor = new Thread(this::acceptConnections, "fake-jambel");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * A fake jambel which answers "OK" to each command except "status" and "version".
+     *
+     * @return a running fake jambel
+     * @throws IOException if the server socket can't be opened
+     */
+    public static FakeJambelServer answeringOk() throws IOException {
+        return new FakeJambelServer(command -> {
+            switch (command) {
+                case "status": return "status=1,0,2,0,0";
+                case "version": return "fake jambel 1.0";
+                default: return "OK";
+            }
+        });
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public List<String> getReceivedCommands() {
+        return receivedCommands;
+    }
+
+    /**
+     * Stop remembering the received commands (e.g. for benchmarks sending millions).
+     */
+    public void stopRecordingCommands() {
+        recordingCommands = false;
+    }
+
+    public int getNumberOfConnections() {
+        return numberOfConnections.get();
+    }
+
+    /**
+     * Close all connections from the server side (like a jambel which gets rebooted).
+     */
+    public void dropConnections() throws InterruptedException {
+        for (Socket socket : openSockets) {
+            try {
+                socket.shutdownInput();
+                socket.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+        // the handlers must be done before the caller sends anything new
+        for (int i = 0; (i < 100) && !openSockets.isEmpty(); ++i) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                openSockets.add(socket);
+                numberOfConnections.incrementAndGet();
+                final Thread handler = new Thread(() -> serve(socket), "fake-jambel-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                // server socket was closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            final BufferedReader in = new BufferedReader(
+                new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            final OutputStream out = s.getOutputStream();
+            String command;
+            while ((command = in.readLine()) != null) {
+                if (recordingCommands) {
+                    receivedCommands.add(command);
+                }
+                final String response = responder.apply(command);
+                if (response != null) {
+                    out.write((response + "\r\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // client went away
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.jambit.hlerchl.jambel.link;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JambelAddressCacheTest {
+
+    private final AtomicReference<String> resolvedIp = new AtomicReference<>("10.0.0.1");
+    private final List<Runnable> refreshTasks = new ArrayList<>();
+    private final JambelAddressCache fixture = new JambelAddressCache("jambel",
+        hostname -> {
+            final String ip = resolvedIp.get();
+            if (ip == null) {
+                throw new UnknownHostException(hostname);
+            }
+            return InetAddress.getByName(ip);
+        }, refreshTasks::add);
+
+    @Test
+    void addressIsResolvedOnlyOnceWithinTtl() throws Exception {
+        fixture.setTtlMsec(60000);
+
+        assertEquals(InetAddress.getByName("10.0.0.1"), fixture.resolve());
+        resolvedIp.set("10.0.0.2");
+        assertEquals(InetAddress.getByName("10.0.0.1"), fixture.resolve());
+        assertEquals(1, fixture.getNumberOfLookups());
+    }
+
+    @Test
+    void addressIsRefreshedInBackgroundBeforeExpiry() throws Exception {
+        fixture.setTtlMsec(60000);
+        fixture.setRefreshAheadMsec(60000);
+
+        fixture.resolve();
+        resolvedIp.set("10.0.0.2");
+        // the caller isn't held up by the refresh ...
+        assertEquals(InetAddress.getByName("10.0.0.1"), fixture.resolve());
+        fixture.resolve();
+        assertEquals(1, refreshTasks.size());
+
+        // ... but the next caller gets the refreshed address
+        refreshTasks.get(0).run();
+        assertEquals(InetAddress.getByName("10.0.0.2"), fixture.resolve());
+        assertEquals(2, fixture.getNumberOfLookups());
+    }
+
+    @Test
+    void lastKnownAddressIsUsedWhenResolverFails() throws Exception {
+        fixture.setTtlMsec(0);
+
+        fixture.resolve();
+        resolvedIp.set(null);
+        assertEquals(InetAddress.getByName("10.0.0.1"), fixture.resolve());
+        assertEquals(1, fixture.getNumberOfFailedLookups());
+
+        resolvedIp.set("10.0.0.3");
+        assertEquals(InetAddress.getByName("10.0.0.3"), fixture.resolve());
+    }
+
+    @Test
+    void unknownHostFailsWithoutKnownAddress() {
+        resolvedIp.set(null);
+
+        assertThrows(UnknownHostException.class, fixture::resolve);
+    }
+
+    @Test
+    void pinnedAddressIsNeverResolved() throws Exception {
+        final JambelAddressCache pinned = JambelAddressCache.pinned("192.168.1.17");
+
+        assertEquals(InetAddress.getByName("192.168.1.17"), pinned.resolve());
+        assertEquals(0, pinned.getNumberOfLookups());
+        assertThrows(IllegalArgumentException.class,
+            () -> JambelAddressCache.pinned("jambel.example.com"));
+    }
+}
@@ -0,0 +1,144 @@
+package com.jambit.hlerchl.jambel.link;
+
+import com.jambit.hlerchl.jambel.entity.JambelCommLink;
+import com.jambit.hlerchl.jambel.exceptions.JambelCircuitOpenException;
+import com.jambit.hlerchl.jambel.exceptions.JambelConnectException;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import com.jambit.hlerchl.jambel.exceptions.JambelResponseException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JambelCircuitBreakerTest {
+
+    private final JambelCommLink mockedLink = Mockito.mock(JambelCommLink.class);
+    private final JambelCircuitBreaker.StateListener listener =
+        Mockito.mock(JambelCircuitBreaker.StateListener.class);
+    private JambelCircuitBreaker fixture;
+
+    @BeforeEach
+    void setupFixture() {
+        fixture = new JambelCircuitBreaker(mockedLink, Runnable::run);
+        fixture.setFailureThreshold(2);
+        fixture.setInitialProbeDelayMsec(10);
+        fixture.addStateListener(listener);
+    }
+
+    @Test
+    void breakerOpensAfterConsecutiveFailures() throws JambelException {
+        fixture.setInitialProbeDelayMsec(60000);
+        failConnects();
+
+        assertThrows(JambelConnectException.class, () -> fixture.sendCommand("status"));
+        assertEquals(JambelCircuitBreaker.State.CLOSED, fixture.getState());
+        assertThrows(JambelConnectException.class, () -> fixture.sendCommand("status"));
+        assertEquals(JambelCircuitBreaker.State.OPEN, fixture.getState());
+
+        assertThrows(JambelCircuitOpenException.class, () -> fixture.sendCommand("status"));
+        Mockito.verify(mockedLink, Mockito.times(2)).sendCommands(Mockito.anyList());
+        Mockito.verify(listener).stateChanged(fixture,
+            JambelCircuitBreaker.State.CLOSED, JambelCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void successResetsFailureCount() throws JambelException {
+        Mockito.doThrow(new JambelConnectException("refused"))
+            .doReturn(Collections.singletonList("OK"))
+            .doThrow(new JambelConnectException("refused"))
+            .when(mockedLink).sendCommands(Mockito.anyList());
+
+        assertThrows(JambelConnectException.class, () -> fixture.sendCommand("test"));
+        assertEquals("OK", fixture.sendCommand("test"));
+        assertThrows(JambelConnectException.class, () -> fixture.sendCommand("test"));
+
+        assertEquals(JambelCircuitBreaker.State.CLOSED, fixture.getState());
+    }
+
+    @Test
+    void unexpectedResponsesDoNotOpenBreaker() throws JambelException {
+        Mockito.doThrow(new JambelResponseException("garbage"))
+            .when(mockedLink).sendCommands(Mockito.anyList());
+
+        for (int i = 0; i < 5; ++i) {
+            assertThrows(JambelResponseException.class, () -> fixture.sendCommand("status"));
+        }
+        assertEquals(JambelCircuitBreaker.State.CLOSED, fixture.getState());
+    }
+
+    @Test
+    void successfulProbeClosesBreaker() throws JambelException {
+        failConnects();
+        Mockito.doReturn("OK").when(mockedLink).sendCommand("test");
+
+        assertThrows(JambelConnectException.class, () -> fixture.sendCommand("status"));
+        assertThrows(JambelConnectException.class, () -> fixture.sendCommand("status"));
+
+        Mockito.verify(listener, Mockito.timeout(2000)).stateChanged(fixture,
+            JambelCircuitBreaker.State.HALF_OPEN, JambelCircuitBreaker.State.CLOSED);
+        final InOrder inOrder = Mockito.inOrder(listener);
+        inOrder.verify(listener).stateChanged(fixture,
+            JambelCircuitBreaker.State.CLOSED, JambelCircuitBreaker.State.OPEN);
+        inOrder.verify(listener).stateChanged(fixture,
+            JambelCircuitBreaker.State.OPEN, JambelCircuitBreaker.State.HALF_OPEN);
+        assertEquals(JambelCircuitBreaker.State.CLOSED, fixture.getState());
+    }
+
+    @Test
+    void failedProbeKeepsBreakerOpen() throws JambelException {
+        failConnects();
+        Mockito.doThrow(new JambelConnectException("refused"))
+            .doReturn("OK")
+            .when(mockedLink).sendCommand("test");
+
+        assertThrows(JambelConnectException.class, () -> fixture.sendCommand("status"));
+        assertThrows(JambelConnectException.class, () -> fixture.sendCommand("status"));
+
+        Mockito.verify(listener, Mockito.timeout(2000)).stateChanged(fixture,
+            JambelCircuitBreaker.State.HALF_OPEN, JambelCircuitBreaker.State.OPEN);
+        Mockito.verify(listener, Mockito.timeout(2000)).stateChanged(fixture,
+            JambelCircuitBreaker.State.HALF_OPEN, JambelCircuitBreaker.State.CLOSED);
+        Mockito.verify(mockedLink, Mockito.times(2)).sendCommand("test");
+    }
+
+    @Test
+    void rejectedProbeIsRetriedLater() throws JambelException {
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicReference<String> probeThread = new AtomicReference<>();
+        fixture = new JambelCircuitBreaker(mockedLink, task -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RejectedExecutionException("busy");
+            }
+            new Thread(task, "probe").start();
+        });
+        fixture.setFailureThreshold(1);
+        fixture.setInitialProbeDelayMsec(10);
+        fixture.addStateListener(listener);
+        failConnects();
+        Mockito.doAnswer(invocation -> {
+            probeThread.set(Thread.currentThread().getName());
+            return "OK";
+        }).when(mockedLink).sendCommand("test");
+
+        assertThrows(JambelConnectException.class, () -> fixture.sendCommand("status"));
+
+        Mockito.verify(listener, Mockito.timeout(2000)).stateChanged(fixture,
+            JambelCircuitBreaker.State.HALF_OPEN, JambelCircuitBreaker.State.CLOSED);
+        assertEquals(2, attempts.get());
+        // never on the timer thread
+        assertEquals("probe", probeThread.get());
+    }
+
+    private void failConnects() throws JambelException {
+        Mockito.doThrow(new JambelConnectException("refused"))
+            .when(mockedLink).sendCommands(Mockito.anyList());
+    }
+}
@@ -0,0 +1,69 @@
+package com.jambit.hlerchl.jambel.link;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JambelConnectionAdmissionTest {
+
+    @Test
+    void admissionIsSharedPerEndpoint() {
+        assertSame(JambelConnectionAdmission.forEndpoint("jambel.example.com", 10001),
+            JambelConnectionAdmission.forEndpoint("jambel.example.com", 10001));
+        assertNotSame(JambelConnectionAdmission.forEndpoint("jambel.example.com", 10001),
+            JambelConnectionAdmission.forEndpoint("jambel.example.com", 10002));
+    }
+
+    @Test
+    void sessionsAreLimited() throws InterruptedException {
+        final JambelConnectionAdmission admission = new JambelConnectionAdmission("test:1", 2);
+
+        assertTrue(admission.tryAcquire(0));
+        assertTrue(admission.tryAcquire(0));
+        assertFalse(admission.tryAcquire(10));
+        assertEquals(2, admission.getActiveSessions());
+
+        admission.release();
+        assertTrue(admission.tryAcquire(0));
+        assertEquals(3, admission.getNumberOfAdmissions());
+        assertEquals(1, admission.getNumberOfRejections());
+    }
+
+    @Test
+    void limitCanBeChanged() throws InterruptedException {
+        final JambelConnectionAdmission admission = new JambelConnectionAdmission("test:2", 1);
+        assertTrue(admission.tryAcquire(0));
+
+        admission.setMaxSessions(2);
+        assertTrue(admission.tryAcquire(0));
+
+        admission.setMaxSessions(1);
+        admission.release();
+        assertFalse(admission.tryAcquire(0));
+        admission.release();
+        assertTrue(admission.tryAcquire(0));
+    }
+
+    @Test
+    void waitingLinkIsAdmittedWhenSessionIsReturned() throws InterruptedException {
+        final JambelConnectionAdmission admission = new JambelConnectionAdmission("test:3", 1);
+        assertTrue(admission.tryAcquire(0));
+
+        final Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            admission.release();
+        });
+        releaser.start();
+
+        assertTrue(admission.tryAcquire(2000));
+        assertTrue(admission.getMaxWaitMsec() >= 20);
+        releaser.join();
+    }
+}
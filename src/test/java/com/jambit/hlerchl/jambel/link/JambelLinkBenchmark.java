@@ -0,0 +1,90 @@
+package com.jambit.hlerchl.jambel.link;
+
+import com.jambit.hlerchl.jambel.entity.JambelCommLink;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-command latency (and with the GC profiler: the allocations) of
+ * the telnet link and the socket link talking to a {@link FakeJambelServer}.
+ * <p>
+ * Run {@link #main} from the IDE or after {@code mvn test-compile} via
+ * {@code java -cp target/test-classes:target/classes:<test classpath>
+ * org.openjdk.jmh.Main JambelLinkBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JambelLinkBenchmark {
+
+    @Param({"telnet", "socket"})
+    public String linkType;
+
+    @Param({"false", "true"})
+    public boolean persistentConnection;
+
+    private FakeJambelServer jambel;
+    private JambelCommLink link;
+    private Runnable closeLink;
+
+    @Setup(Level.Trial)
+    public void startJambel() throws IOException {
+        jambel = FakeJambelServer.answeringOk();
+        jambel.stopRecordingCommands();
+        final JambelConnectionAdmission admission =
+            new JambelConnectionAdmission("benchmark", 1);
+        if ("telnet".equals(linkType)) {
+            final JambelTelnetLink telnetLink = new JambelTelnetLink("localhost", jambel.getPort());
+            telnetLink.setAdmission(admission);
+            telnetLink.setPersistentConnection(persistentConnection);
+            link = telnetLink;
+            closeLink = telnetLink::close;
+        } else {
+            final JambelSocketLink socketLink = new JambelSocketLink("localhost", jambel.getPort());
+            socketLink.setAdmission(admission);
+            socketLink.setPersistentConnection(persistentConnection);
+            link = socketLink;
+            closeLink = socketLink::close;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopJambel() throws IOException {
+        closeLink.run();
+        jambel.close();
+    }
+
+    @Benchmark
+    public String status() throws JambelException {
+        return link.sendCommand("status");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(JambelLinkBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
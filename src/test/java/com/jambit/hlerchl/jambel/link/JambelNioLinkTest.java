@@ -0,0 +1,150 @@
+package com.jambit.hlerchl.jambel.link;
+
+import com.jambit.hlerchl.jambel.exceptions.JambelConnectException;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import com.jambit.hlerchl.jambel.exceptions.JambelTimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JambelNioLinkTest {
+
+    private final JambelNioEventLoop eventLoop = new JambelNioEventLoop();
+
+    @AfterEach
+    void stopEventLoop() {
+        eventLoop.close();
+    }
+
+    @Test
+    void sendCommand() throws IOException, JambelException {
+        try (FakeJambelServer jambel = FakeJambelServer.answeringOk()) {
+            final JambelNioLink link = new JambelNioLink(eventLoop, "localhost", jambel.getPort());
+
+            assertEquals("OK", link.sendCommand("reset"));
+            assertEquals("status=1,0,2,0,0", link.sendCommand("status"));
+            assertEquals(Arrays.asList("reset", "status"), jambel.getReceivedCommands());
+        }
+    }
+
+    @Test
+    void sendCommandsUsesSingleConnection() throws IOException, JambelException {
+        try (FakeJambelServer jambel = FakeJambelServer.answeringOk()) {
+            final JambelNioLink link = new JambelNioLink(eventLoop, "localhost", jambel.getPort());
+
+            final List<String> responses = link.sendCommands(
+                Arrays.asList("blink_time_on=100", "blink_time_off=200", "version"));
+
+            assertEquals(Arrays.asList("OK", "OK", "fake jambel 1.0"), responses);
+            assertEquals(1, jambel.getNumberOfConnections());
+        }
+    }
+
+    /**
+     * Many jambels are served by the single event loop thread in parallel.
+     */
+    @Test
+    void manyLinksShareOneEventLoop() throws IOException {
+        final List<FakeJambelServer> jambels = new ArrayList<>();
+        try {
+            final List<CompletableFuture<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 20; ++i) {
+                final FakeJambelServer jambel = FakeJambelServer.answeringOk();
+                jambels.add(jambel);
+
+                final JambelNioLink link = new JambelNioLink(eventLoop, "localhost", jambel.getPort());
+                responses.add(link.sendCommandAsync("set=1,on"));
+                responses.add(link.sendCommandAsync("set=1,off"));
+            }
+
+            for (CompletableFuture<String> response : responses) {
+                assertEquals("OK", response.join());
+            }
+            for (FakeJambelServer jambel : jambels) {
+                assertEquals(Arrays.asList("set=1,on", "set=1,off"), jambel.getReceivedCommands());
+            }
+        } finally {
+            for (FakeJambelServer jambel : jambels) {
+                jambel.close();
+            }
+        }
+    }
+
+    @Test
+    void refusedConnectionIsRetriedAndReported() throws IOException {
+        final int unusedPort;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            unusedPort = socket.getLocalPort();
+        }
+
+        final JambelNioLink link = new JambelNioLink(eventLoop, "localhost", unusedPort);
+        link.setMsecUntilRetry(1);
+
+        assertThrows(JambelConnectException.class, () -> link.sendCommand("reset"));
+    }
+
+    @Test
+    void missingResponseRunsIntoReadTimeout() throws IOException {
+        try (FakeJambelServer jambel = new FakeJambelServer(command -> null)) {
+            final JambelNioLink link = new JambelNioLink(eventLoop, "localhost", jambel.getPort());
+            link.setReadTimeoutMsec(50);
+
+            assertThrows(JambelTimeoutException.class, () -> link.sendCommand("reset"));
+        }
+    }
+
+    @Test
+    void retriesStopAtCommandDeadline() throws IOException {
+        try (FakeJambelServer jambel = new FakeJambelServer(command -> null)) {
+            final JambelNioLink link = new JambelNioLink(eventLoop, "localhost", jambel.getPort());
+            link.setReadTimeoutMsec(100);
+            link.setNumberOfConnectRetries(1000);
+            link.setMsecUntilRetry(1);
+            link.setCommandTimeoutMsec(250);
+
+            final long start = System.nanoTime();
+            assertThrows(JambelTimeoutException.class, () -> link.sendCommand("status"));
+            final long elapsedMsec = (System.nanoTime() - start) / 1000000;
+            assertTrue(elapsedMsec >= 240, "returned after " + elapsedMsec + " msec");
+            assertTrue(elapsedMsec < 2000, "returned after " + elapsedMsec + " msec");
+            assertTrue(jambel.getNumberOfConnections() <= 3);
+        }
+    }
+
+    @Test
+    void closingEventLoopFailsPendingCommands() throws IOException, InterruptedException {
+        final CountDownLatch received = new CountDownLatch(1);
+        try (FakeJambelServer jambel = new FakeJambelServer(command -> {
+            received.countDown();
+            return null;
+        })) {
+            final JambelNioLink link = new JambelNioLink(eventLoop, "localhost", jambel.getPort());
+            final CompletableFuture<String> active = link.sendCommandAsync("reset");
+            final CompletableFuture<String> queued = link.sendCommandAsync("status");
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+
+            eventLoop.close();
+
+            for (CompletableFuture<String> response : Arrays.asList(active, queued)) {
+                final ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> response.get(5, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof JambelException);
+            }
+            assertThrows(JambelException.class, () -> link.sendCommand("version"));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.jambit.hlerchl.jambel.link;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JambelProcessLockTest {
+
+    @TempDir
+    Path lockDirectory;
+
+    @Test
+    void lockIsSharedPerEndpoint() {
+        final JambelProcessLock lock =
+            JambelProcessLock.forEndpoint(lockDirectory, "jambel.example.com", 10001);
+
+        assertSame(lock, JambelProcessLock.forEndpoint(lockDirectory, "jambel.example.com", 10001));
+        assertEquals(lockDirectory.resolve("jambel.example.com_10001.lock").toAbsolutePath(),
+            lock.getLockFile());
+    }
+
+    @Test
+    void lockFileNamesTheHolder() throws IOException, InterruptedException {
+        final JambelProcessLock lock = JambelProcessLock.forEndpoint(lockDirectory, "holder", 1);
+
+        assertTrue(lock.tryLock(100));
+        final String holder = new String(Files.readAllBytes(lock.getLockFile()),
+            StandardCharsets.UTF_8);
+        lock.unlock();
+
+        assertTrue(holder.contains(" since "), holder);
+        assertEquals(1, lock.getNumberOfLocks());
+    }
+
+    @Test
+    void lockHeldByOtherProcessIsWaitedFor() throws IOException, InterruptedException {
+        final JambelProcessLock lock = JambelProcessLock.forEndpoint(lockDirectory, "other", 2);
+        Files.createDirectories(lockDirectory);
+
+        // a channel of its own acts like another process holding the lock
+        try (FileChannel otherProcess = FileChannel.open(lock.getLockFile(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            final FileLock otherLock = otherProcess.lock();
+            assertFalse(lock.tryLock(50));
+            otherLock.release();
+        }
+
+        assertTrue(lock.tryLock(100));
+        lock.unlock();
+        assertEquals(1, lock.getNumberOfTimeouts());
+    }
+
+    @Test
+    void deletedLockFileIsRecreated() throws IOException, InterruptedException {
+        final JambelProcessLock lock = JambelProcessLock.forEndpoint(lockDirectory, "deleted", 3);
+        assertTrue(lock.tryLock(100));
+        lock.unlock();
+
+        Files.delete(lock.getLockFile());
+
+        assertTrue(lock.tryLock(100));
+        assertTrue(Files.exists(lock.getLockFile()));
+        lock.unlock();
+    }
+
+    @Test
+    void replacedLockFileIsOpenedAgain() throws IOException, InterruptedException {
+        final JambelProcessLock lock = JambelProcessLock.forEndpoint(lockDirectory, "replaced", 4);
+        assertTrue(lock.tryLock(100));
+        lock.unlock();
+
+        // another process replaces the file and locks the new one
+        Files.delete(lock.getLockFile());
+        try (FileChannel otherProcess = FileChannel.open(lock.getLockFile(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            final FileLock otherLock = otherProcess.lock();
+            assertFalse(lock.tryLock(50));
+            otherLock.release();
+        }
+
+        assertTrue(lock.tryLock(100));
+        lock.unlock();
+    }
+}
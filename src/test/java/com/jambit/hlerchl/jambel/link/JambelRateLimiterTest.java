@@ -0,0 +1,49 @@
+package com.jambit.hlerchl.jambel.link;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JambelRateLimiterTest {
+
+    @Test
+    void burstIsAvailableRightAway() {
+        final JambelRateLimiter limiter = new JambelRateLimiter(0.01, 3);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    void callerWaitsForNextToken() throws InterruptedException {
+        final JambelRateLimiter limiter = new JambelRateLimiter(20, 1);
+        assertTrue(limiter.tryAcquire());
+
+        final long start = System.nanoTime();
+        assertTrue(limiter.tryAcquire(1000));
+        final long waitedMsec = (System.nanoTime() - start) / 1000000;
+
+        // one token per 50 msec
+        assertTrue(waitedMsec >= 30, "waited only " + waitedMsec + " msec");
+    }
+
+    @Test
+    void callerDoesNotWaitIfTokenComesTooLate() throws InterruptedException {
+        final JambelRateLimiter limiter = new JambelRateLimiter(0.01, 1);
+        assertTrue(limiter.tryAcquire());
+
+        final long start = System.nanoTime();
+        assertFalse(limiter.tryAcquire(100));
+        assertTrue((System.nanoTime() - start) / 1000000 < 100);
+    }
+
+    @Test
+    void limiterIsSharedPerHost() {
+        assertSame(JambelRateLimiter.forHost("jambel.example.com", 5, 2),
+            JambelRateLimiter.forHost("jambel.example.com", 10, 4));
+    }
+}
@@ -0,0 +1,84 @@
+package com.jambit.hlerchl.jambel.link;
+
+import com.jambit.hlerchl.jambel.exceptions.JambelConnectException;
+import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import com.jambit.hlerchl.jambel.exceptions.JambelTimeoutException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JambelSocketLinkTest {
+
+    @Test
+    void sendCommandsUsesSingleConnection() throws IOException, JambelException {
+        try (FakeJambelServer jambel = FakeJambelServer.answeringOk()) {
+            final JambelSocketLink link = new JambelSocketLink("localhost", jambel.getPort());
+
+            assertEquals(Arrays.asList("OK", "OK", "fake jambel 1.0"), link.sendCommands(
+                Arrays.asList("blink_time_on=100", "blink_time_off=200\r\n", "version")));
+            assertEquals(Arrays.asList("blink_time_on=100", "blink_time_off=200", "version"),
+                jambel.getReceivedCommands());
+            assertEquals(1, jambel.getNumberOfConnections());
+        }
+    }
+
+    @Test
+    void persistentConnectionIsReused() throws IOException, JambelException {
+        try (FakeJambelServer jambel = FakeJambelServer.answeringOk()) {
+            final JambelSocketLink link = new JambelSocketLink("localhost", jambel.getPort());
+            link.setPersistentConnection(true);
+
+            assertEquals("OK", link.sendCommand("reset"));
+            assertEquals("status=1,0,2,0,0", link.sendCommand("status"));
+            assertEquals(1, jambel.getNumberOfConnections());
+
+            link.close();
+            assertEquals("OK", link.sendCommand("reset"));
+            assertEquals(2, jambel.getNumberOfConnections());
+            link.close();
+        }
+    }
+
+    @Test
+    void numericArgumentsAreWrittenAsDigits() throws IOException, JambelException {
+        try (FakeJambelServer jambel = FakeJambelServer.answeringOk()) {
+            final JambelSocketLink link = new JambelSocketLink("localhost", jambel.getPort());
+            link.setPersistentConnection(true);
+
+            assertEquals("OK", link.sendCommand("set=", 2, 1000));
+            assertEquals("OK", link.sendCommand("blink_time=", 3, 0, -42));
+            assertEquals("OK", link.sendCommand("set=", 1, Integer.MIN_VALUE));
+            assertEquals(Arrays.asList("set=2,1000", "blink_time=3,0,-42", "set=1,-2147483648"),
+                jambel.getReceivedCommands());
+            link.close();
+        }
+    }
+
+    @Test
+    void refusedConnectionFails() throws IOException {
+        final int port;
+        try (ServerSocket unused = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = unused.getLocalPort();
+        }
+        final JambelSocketLink link = new JambelSocketLink("localhost", port);
+        link.setMsecUntilRetry(1);
+
+        assertThrows(JambelConnectException.class, () -> link.sendCommand("status"));
+    }
+
+    @Test
+    void silentJambelTimesOut() throws IOException {
+        try (FakeJambelServer jambel = new FakeJambelServer(command -> null)) {
+            final JambelSocketLink link = new JambelSocketLink("localhost", jambel.getPort());
+            link.setCommandTimeoutMsec(100);
+
+            assertThrows(JambelTimeoutException.class, () -> link.sendCommand("status"));
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package com.jambit.hlerchl.jambel.link;
 
+import com.jambit.hlerchl.jambel.exceptions.JambelAdmissionException;
 import com.jambit.hlerchl.jambel.exceptions.JambelConnectException;
 import com.jambit.hlerchl.jambel.exceptions.JambelException;
+import com.jambit.hlerchl.jambel.exceptions.JambelIoException;
+import com.jambit.hlerchl.jambel.exceptions.JambelRateLimitException;
+import com.jambit.hlerchl.jambel.exceptions.JambelTimeoutException;
 import org.apache.commons.net.telnet.TelnetClient;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -13,17 +18,28 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.ConnectException;
+import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 class JambelTelnetLinkTest {
@@ -65,6 +81,21 @@ class JambelTelnetLinkTest {
         assertEquals("reset\r\n", sentCommand);
     }
 
+    @Test
+    void trailingCrLfIsSentOnce() throws IOException, JambelException {
+        TelnetClient tc = Mockito.mock(TelnetClient.class);
+        final ByteArrayOutputStream mockedOutput = new ByteArrayOutputStream();
+        doReturn(new ByteArrayInputStream("OK\r\n".getBytes(StandardCharsets.UTF_8)))
+            .when(tc).getInputStream();
+        doReturn(mockedOutput).when(tc).getOutputStream();
+
+        final JambelTelnetLink link = new JambelTelnetLink(tc, "localhost", 1337);
+        assertEquals("OK", link.sendCommand("set=2,on\r\n"));
+
+        final String sentCommand = new String(mockedOutput.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals("set=2,on\r\n", sentCommand);
+    }
+
     /**
      * In case the jambel can't be found (we or the jambel are offline, DNS error,
      * broken switch, ...) there will be a UnknownHostException.
@@ -177,4 +208,441 @@ class JambelTelnetLinkTest {
         final String sentCommand = new String(mockedOutput.toByteArray(), StandardCharsets.UTF_8);
         assertEquals("set=3,off\r\n", sentCommand);
     }
+
+    /**
+     * Waiting for a rate limit token before a retry doesn't count against the
+     * command deadline (just like waiting for a free session).
+     * @throws IOException should never happen
+     * @throws JambelException should never happen
+     */
+    @Test
+    void rateLimitWaitBeforeRetryDoesntCount() throws IOException, JambelException {
+        TelnetClient tc = Mockito.mock(TelnetClient.class);
+        doReturn(new ByteArrayInputStream("OK\r\n".getBytes(StandardCharsets.UTF_8)))
+            .when(tc).getInputStream();
+        doReturn(new ByteArrayOutputStream()).when(tc).getOutputStream();
+        doThrow(new ConnectException("Connection refused by peer"))
+            .doNothing()
+            .when(tc).connect(anyString(), anyInt());
+
+        final JambelTelnetLink link = new JambelTelnetLink(tc, "localhost", 1337);
+        link.setRateLimiter(new JambelRateLimiter(4, 1));
+        link.setMaxRateLimitWaitMsec(1000);
+        link.setCommandTimeoutMsec(100);
+        link.setMsecUntilRetry(1);
+
+        assertEquals("OK", link.sendCommand("set=3,off"));
+        verify(tc, times(2)).connect("localhost", 1337);
+    }
+
+    /**
+     * With a persistent connection two commands share one telnet session.
+     * @throws IOException should never happen
+     * @throws JambelException should never happen
+     */
+    @Test
+    void persistentConnectionIsReused() throws IOException, JambelException {
+        final TelnetClient tc = mockConnectionTrackingClient();
+        final InputStream mockedInput =
+            new ByteArrayInputStream("OK\r\nstatus=1,0,2,0,0\r\n".getBytes(StandardCharsets.UTF_8));
+        final ByteArrayOutputStream mockedOutput = new ByteArrayOutputStream();
+        doReturn(mockedInput).when(tc).getInputStream();
+        doReturn(mockedOutput).when(tc).getOutputStream();
+
+        final JambelTelnetLink link = new JambelTelnetLink(tc, "localhost", 1337);
+        link.setPersistentConnection(true);
+        assertEquals("OK", link.sendCommand("reset"));
+        assertEquals("status=1,0,2,0,0", link.sendCommand("status"));
+
+        verify(tc, times(1)).connect("localhost", 1337);
+        verify(tc, never()).disconnect();
+
+        final String sentCommands = new String(mockedOutput.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals("reset\r\nstatus\r\n", sentCommands);
+
+        link.close();
+        verify(tc).disconnect();
+    }
+
+    /**
+     * If the jambel dropped the persistent connection, the link silently reconnects.
+     * @throws IOException should never happen
+     * @throws JambelException should never happen
+     */
+    @Test
+    void persistentConnectionReconnectsWhenDropped() throws IOException, JambelException {
+        final TelnetClient tc = mockConnectionTrackingClient();
+        final ByteArrayOutputStream mockedOutput = new ByteArrayOutputStream();
+        doReturn(mockedOutput).when(tc).getOutputStream();
+        doReturn(new ByteArrayInputStream("OK\r\n".getBytes(StandardCharsets.UTF_8)))
+            .doReturn(new ByteArrayInputStream(new byte[0]))
+            .doReturn(new ByteArrayInputStream("OK\r\n".getBytes(StandardCharsets.UTF_8)))
+            .when(tc).getInputStream();
+
+        final JambelTelnetLink link = new JambelTelnetLink(tc, "localhost", 1337);
+        link.setPersistentConnection(true);
+        assertEquals("OK", link.sendCommand("set=1,on"));
+        assertEquals("OK", link.sendCommand("set=1,off"));
+
+        verify(tc, times(2)).connect("localhost", 1337);
+        verify(tc, times(1)).disconnect();
+        link.close();
+    }
+
+    /**
+     * An unused persistent connection gets closed after the idle timeout.
+     * @throws IOException should never happen
+     * @throws JambelException should never happen
+     */
+    @Test
+    void persistentConnectionIsClosedWhenIdle() throws IOException, JambelException {
+        final TelnetClient tc = mockConnectionTrackingClient();
+        doReturn(new ByteArrayInputStream("OK\r\n".getBytes(StandardCharsets.UTF_8)))
+            .when(tc).getInputStream();
+        doReturn(new ByteArrayOutputStream()).when(tc).getOutputStream();
+
+        final JambelTelnetLink link = new JambelTelnetLink(tc, "localhost", 1337);
+        link.setPersistentConnection(true);
+        link.setIdleTimeoutMsec(10);
+        assertEquals("OK", link.sendCommand("test"));
+
+        verify(tc, timeout(2000)).disconnect();
+    }
+
+    /**
+     * Several commands are written via one connection; the responses are read afterwards.
+     * @throws IOException should never happen
+     * @throws JambelException should never happen
+     */
+    @Test
+    void sendCommandsUsesSingleConnection() throws IOException, JambelException {
+        TelnetClient tc = Mockito.mock(TelnetClient.class);
+        final InputStream mockedInput =
+            new ByteArrayInputStream("OK\r\nOK\r\nOK\r\n".getBytes(StandardCharsets.UTF_8));
+        final ByteArrayOutputStream mockedOutput = new ByteArrayOutputStream();
+        doReturn(mockedInput).when(tc).getInputStream();
+        doReturn(mockedOutput).when(tc).getOutputStream();
+
+        final JambelTelnetLink link = new JambelTelnetLink(tc, "localhost", 1337);
+        final List<String> responses = link.sendCommands(
+            Arrays.asList("blink_time_on=100", "blink_time_off=200", "set=1,blink"));
+        assertEquals(Arrays.asList("OK", "OK", "OK"), responses);
+
+        verify(tc, times(1)).connect("localhost", 1337);
+        verify(tc, times(1)).disconnect();
+
+        final String sentCommands = new String(mockedOutput.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals("blink_time_on=100\r\nblink_time_off=200\r\nset=1,blink\r\n", sentCommands);
+    }
+
+    /**
+     * Without a token from the rate limiter the link fails fast (if told so).
+     * @throws IOException should never happen
+     * @throws JambelException should never happen
+     */
+    @Test
+    void rateLimitedLinkFailsFast() throws IOException, JambelException {
+        TelnetClient tc = Mockito.mock(TelnetClient.class);
+        doReturn(new ByteArrayInputStream("OK\r\n".getBytes(StandardCharsets.UTF_8)))
+            .when(tc).getInputStream();
+        doReturn(new ByteArrayOutputStream()).when(tc).getOutputStream();
+
+        final JambelTelnetLink link = new JambelTelnetLink(tc, "localhost", 1337);
+        link.setRateLimiter(new JambelRateLimiter(0.01, 1));
+        link.setMaxRateLimitWaitMsec(0);
+        assertEquals("OK", link.sendCommand("test"));
+        assertThrows(JambelRateLimitException.class, () -> link.sendCommand("test"));
+
+        verify(tc, times(1)).connect("localhost", 1337);
+    }
+
+    /**
+     * Links to the same jambel share its sessions; an open persistent connection
+     * keeps other links out until it is closed.
+     * @throws IOException should never happen
+     * @throws JambelException should never happen
+     */
+    @Test
+    void linksToSameJambelShareSessions() throws IOException, JambelException {
+        final TelnetClient persistentClient = mockConnectionTrackingClient();
+        doReturn(new ByteArrayInputStream("OK\r\n".getBytes(StandardCharsets.UTF_8)))
+            .when(persistentClient).getInputStream();
+        doReturn(new ByteArrayOutputStream()).when(persistentClient).getOutputStream();
+        final TelnetClient otherClient = Mockito.mock(TelnetClient.class);
+        doReturn(new ByteArrayInputStream("OK\r\n".getBytes(StandardCharsets.UTF_8)))
+            .when(otherClient).getInputStream();
+        doReturn(new ByteArrayOutputStream()).when(otherClient).getOutputStream();
+
+        final JambelTelnetLink persistentLink =
+            new JambelTelnetLink(persistentClient, "localhost", 4242);
+        persistentLink.setPersistentConnection(true);
+        final JambelTelnetLink otherLink = new JambelTelnetLink(otherClient, "localhost", 4242);
+        otherLink.setMaxAdmissionWaitMsec(0);
+
+        assertEquals("OK", persistentLink.sendCommand("test"));
+        assertEquals(1, persistentLink.getAdmission().getActiveSessions());
+        assertThrows(JambelAdmissionException.class, () -> otherLink.sendCommand("test"));
+        verify(otherClient, never()).connect(anyString(), anyInt());
+
+        persistentLink.close();
+        assertEquals("OK", otherLink.sendCommand("test"));
+        assertEquals(0, otherLink.getAdmission().getActiveSessions());
+    }
+
+    /**
+     * The lock against other processes is held only while the link is connected.
+     * @param lockDirectory where to put the lock file
+     * @throws Exception should never happen
+     */
+    @Test
+    void processLockIsReleasedAfterSession(@TempDir Path lockDirectory) throws Exception {
+        TelnetClient tc = Mockito.mock(TelnetClient.class);
+        doReturn(new ByteArrayInputStream("OK\r\n".getBytes(StandardCharsets.UTF_8)))
+            .when(tc).getInputStream();
+        doReturn(new ByteArrayOutputStream()).when(tc).getOutputStream();
+        final JambelProcessLock processLock =
+            JambelProcessLock.forEndpoint(lockDirectory, "localhost", 4343);
+
+        final JambelTelnetLink link = new JambelTelnetLink(tc, "localhost", 4343);
+        link.setProcessLock(processLock);
+        assertEquals("OK", link.sendCommand("test"));
+
+        assertEquals(1, processLock.getNumberOfLocks());
+        assertTrue(processLock.tryLock(0));
+        processLock.unlock();
+    }
+
+    /**
+     * Reads are repeated after an I/O error; writes are not.
+     * @throws IOException should never happen
+     * @throws JambelException should never happen
+     */
+    @Test
+    void onlyReadsAreRetriedAfterIoError() throws IOException, JambelException {
+        TelnetClient tc = Mockito.mock(TelnetClient.class);
+        doReturn(new ByteArrayOutputStream()).when(tc).getOutputStream();
+        doReturn(new ByteArrayInputStream(new byte[0]))
+            .doReturn(new ByteArrayInputStream(
+                "status=1,0,2,0,0\r\n".getBytes(StandardCharsets.UTF_8)))
+            .doReturn(new ByteArrayInputStream(new byte[0]))
+            .when(tc).getInputStream();
+
+        final JambelTelnetLink link = new JambelTelnetLink(tc, "localhost", 1337);
+        link.getRetrySettings().setBudget(new RetryBudget(1, 10));
+        link.setMsecUntilRetry(1);
+        assertEquals("status=1,0,2,0,0", link.sendCommand("status"));
+        verify(tc, times(2)).connect("localhost", 1337);
+
+        assertThrows(JambelIoException.class, () -> link.sendCommand("set=1,on"));
+        verify(tc, times(3)).connect("localhost", 1337);
+    }
+
+    /**
+     * A jambel which never answers lets the command fail once its deadline expired.
+     * @throws IOException should never happen
+     */
+    @Test
+    void silentJambelTimesOut() throws IOException {
+        try (FakeJambelServer jambel = new FakeJambelServer(command -> null)) {
+            final JambelTelnetLink link = new JambelTelnetLink("localhost", jambel.getPort());
+            link.setCommandTimeoutMsec(200);
+            link.setMsecUntilRetry(1);
+
+            final long start = System.nanoTime();
+            assertThrows(JambelTimeoutException.class, () -> link.sendCommand("status"));
+            final long elapsedMsec = (System.nanoTime() - start) / 1000000;
+            assertTrue(elapsedMsec >= 190, "returned after " + elapsedMsec + " msec");
+            assertTrue(elapsedMsec < 2000, "returned after " + elapsedMsec + " msec");
+        }
+    }
+
+    /**
+     * With adaptive timeouts a silent jambel is given up on after the estimated timeout
+     * instead of the (much longer) command timeout.
+     * @throws IOException should never happen
+     * @throws JambelException should never happen
+     */
+    @Test
+    void adaptiveTimeoutFollowsMeasuredRtt() throws IOException, JambelException {
+        final AtomicBoolean silent = new AtomicBoolean(false);
+        try (FakeJambelServer jambel = new FakeJambelServer(
+                command -> silent.get() ? null : "OK")) {
+            final JambelTelnetLink link = new JambelTelnetLink("localhost", jambel.getPort());
+            final RttEstimator estimator = new RttEstimator();
+            estimator.setMinTimeoutMsec(50);
+            link.setRttEstimator(estimator);
+            link.setAdaptiveTimeouts(true);
+
+            assertEquals("OK", link.sendCommand("reset"));
+            assertEquals(1, estimator.getNumberOfSamples());
+            assertEquals(50, estimator.getTimeoutMsec());
+
+            silent.set(true);
+            final long start = System.nanoTime();
+            assertThrows(JambelTimeoutException.class, () -> link.sendCommand("set=1,on"));
+            final long elapsedMsec = (System.nanoTime() - start) / 1000000;
+            assertTrue(elapsedMsec < 2000, "returned after " + elapsedMsec + " msec");
+            assertEquals(100, estimator.getTimeoutMsec());
+        }
+    }
+
+    @Test
+    void cachedAddressIsUsedForConnect() throws IOException, JambelException {
+        TelnetClient tc = Mockito.mock(TelnetClient.class);
+        doReturn(new ByteArrayInputStream("OK\r\n".getBytes(StandardCharsets.UTF_8)))
+            .when(tc).getInputStream();
+        doReturn(new ByteArrayOutputStream()).when(tc).getOutputStream();
+
+        final JambelTelnetLink link = new JambelTelnetLink(tc, "jambel.example.com", 1337);
+        link.setAddressCache(JambelAddressCache.pinned("10.1.2.3"));
+        assertEquals("OK", link.sendCommand("reset"));
+
+        verify(tc).connect(InetAddress.getByName("10.1.2.3"), 1337);
+        verify(tc, never()).connect(anyString(), anyInt());
+    }
+
+    /**
+     * With pre-connect each command finds a connection which was opened in advance;
+     * one which the jambel dropped in the meantime is replaced.
+     * @throws Exception should never happen
+     */
+    @Test
+    void preparedConnectionIsUsedByNextCommand() throws Exception {
+        try (FakeJambelServer jambel = FakeJambelServer.answeringOk()) {
+            final JambelTelnetLink link = new JambelTelnetLink("localhost", jambel.getPort());
+            link.setAdmission(new JambelConnectionAdmission("prepared", 1));
+            link.setPreConnect(true);
+            waitForConnections(jambel, 1);
+
+            assertEquals("OK", link.sendCommand("reset"));
+            // the command used the prepared connection; the next one is on its way
+            waitForConnections(jambel, 2);
+
+            jambel.dropConnections();
+            assertEquals("status=1,0,2,0,0", link.sendCommand("status"));
+            waitForConnections(jambel, 4);
+            assertEquals(Arrays.asList("reset", "status"), jambel.getReceivedCommands());
+
+            link.setPreConnect(false);
+            assertEquals(0, link.getAdmission().getActiveSessions());
+        }
+    }
+
+    /**
+     * A prepared connection must not take the session which another link waits for.
+     * @throws Exception should never happen
+     */
+    @Test
+    void preConnectRespectsSessionLimit() throws Exception {
+        try (FakeJambelServer jambel = FakeJambelServer.answeringOk()) {
+            final JambelConnectionAdmission admission = new JambelConnectionAdmission("busy", 1);
+            final JambelTelnetLink link = new JambelTelnetLink("localhost", jambel.getPort());
+            link.setAdmission(admission);
+            assertTrue(admission.tryAcquire(0));
+
+            link.setPreConnect(true);
+            Thread.sleep(100);
+            assertEquals(0, jambel.getNumberOfConnections());
+
+            admission.release();
+            link.setMaxAdmissionWaitMsec(1000);
+            assertEquals("OK", link.sendCommand("reset"));
+            link.close();
+        }
+    }
+
+    /**
+     * A prepared connection gives its session back as soon as another link waits
+     * for one, even if the link started waiting after the connection was opened.
+     * @throws Exception should never happen
+     */
+    @Test
+    void preparedConnectionMakesWayForOtherLink() throws Exception {
+        try (FakeJambelServer jambel = FakeJambelServer.answeringOk()) {
+            final JambelConnectionAdmission admission = new JambelConnectionAdmission("warm", 1);
+            final JambelTelnetLink preparedLink =
+                new JambelTelnetLink("localhost", jambel.getPort());
+            preparedLink.setAdmission(admission);
+            preparedLink.setIdleTimeoutMsec(60000);
+            preparedLink.setPreConnect(true);
+            waitForConnections(jambel, 1);
+            final JambelTelnetLink otherLink = new JambelTelnetLink("localhost", jambel.getPort());
+            otherLink.setAdmission(admission);
+            otherLink.setMaxAdmissionWaitMsec(5000);
+
+            assertTimeoutPreemptively(Duration.ofSeconds(2),
+                () -> assertEquals("OK", otherLink.sendCommand("test")));
+            assertEquals(Arrays.asList("test"), jambel.getReceivedCommands());
+            preparedLink.setPreConnect(false);
+        }
+    }
+
+    /**
+     * An idle persistent connection gives its session back as soon as another link
+     * waits for one (instead of keeping it until the idle timeout).
+     * @throws Exception should never happen
+     */
+    @Test
+    void idlePersistentConnectionMakesWayForOtherLink() throws Exception {
+        try (FakeJambelServer jambel = FakeJambelServer.answeringOk()) {
+            final JambelConnectionAdmission admission = new JambelConnectionAdmission("shared", 1);
+            final JambelTelnetLink persistentLink =
+                new JambelTelnetLink("localhost", jambel.getPort());
+            persistentLink.setAdmission(admission);
+            persistentLink.setPersistentConnection(true);
+            persistentLink.setIdleTimeoutMsec(60000);
+            final JambelTelnetLink otherLink = new JambelTelnetLink("localhost", jambel.getPort());
+            otherLink.setAdmission(admission);
+            otherLink.setMaxAdmissionWaitMsec(5000);
+
+            assertEquals("OK", persistentLink.sendCommand("reset"));
+            assertEquals(1, admission.getActiveSessions());
+
+            assertTimeoutPreemptively(Duration.ofSeconds(2),
+                () -> assertEquals("OK", otherLink.sendCommand("test")));
+            assertEquals(0, admission.getActiveSessions());
+
+            // the persistent link connects again for its next command
+            assertEquals("OK", persistentLink.sendCommand("reset"));
+            assertEquals(3, jambel.getNumberOfConnections());
+            persistentLink.close();
+        }
+    }
+
+    /**
+     * A response which doesn't fit into the receive buffer is an I/O error instead of a
+     * busy loop.
+     * @throws IOException should never happen
+     */
+    @Test
+    void overlongResponseFails() throws IOException {
+        TelnetClient tc = Mockito.mock(TelnetClient.class);
+        final byte[] garbage = new byte[100000];
+        Arrays.fill(garbage, (byte) 'x');
+        doReturn(new ByteArrayOutputStream()).when(tc).getOutputStream();
+        doAnswer(invocation -> new ByteArrayInputStream(garbage)).when(tc).getInputStream();
+
+        final JambelTelnetLink link = new JambelTelnetLink(tc, "localhost", 1337);
+        link.setMsecUntilRetry(1);
+        assertThrows(JambelIoException.class, () -> link.sendCommand("status"));
+    }
+
+    private static void waitForConnections(FakeJambelServer jambel, int expected)
+        throws InterruptedException {
+        for (int i = 0; (i < 200) && (jambel.getNumberOfConnections() < expected); ++i) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, jambel.getNumberOfConnections());
+    }
+
+    private TelnetClient mockConnectionTrackingClient() throws IOException {
+        final TelnetClient tc = Mockito.mock(TelnetClient.class);
+        final AtomicBoolean connected = new AtomicBoolean(false);
+        doAnswer(invocation -> { connected.set(true); return null; })
+            .when(tc).connect(anyString(), anyInt());
+        doAnswer(invocation -> { connected.set(false); return null; })
+            .when(tc).disconnect();
+        doAnswer(invocation -> connected.get()).when(tc).isConnected();
+        return tc;
+    }
 }
@@ -0,0 +1,108 @@
+package com.jambit.hlerchl.jambel.link;
+
+import com.jambit.hlerchl.jambel.exceptions.JambelIoException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+    @Test
+    void fixedPolicyWaitsAlwaysTheSame() {
+        final RetryPolicy policy = RetryPolicy.fixed(2, 100);
+
+        assertEquals(100, policy.delayBeforeRetry(1, 0));
+        assertEquals(100, policy.delayBeforeRetry(2, 100));
+        assertEquals(RetryPolicy.GIVE_UP, policy.delayBeforeRetry(3, 100));
+    }
+
+    @Test
+    void exponentialPolicyDoublesUpToMaximum() {
+        final RetryPolicy policy = RetryPolicy.exponential(10, 100, 500);
+
+        assertEquals(100, policy.delayBeforeRetry(1, 0));
+        assertEquals(200, policy.delayBeforeRetry(2, 100));
+        assertEquals(400, policy.delayBeforeRetry(3, 200));
+        assertEquals(500, policy.delayBeforeRetry(4, 400));
+        assertEquals(500, policy.delayBeforeRetry(10, 500));
+        assertEquals(RetryPolicy.GIVE_UP, policy.delayBeforeRetry(11, 500));
+    }
+
+    @Test
+    void decorrelatedJitterStaysWithinBounds() {
+        final RetryPolicy policy = RetryPolicy.decorrelatedJitter(1000, 50, 2000);
+
+        long previousDelay = 0;
+        for (int retryNr = 1; retryNr <= 1000; ++retryNr) {
+            final long delay = policy.delayBeforeRetry(retryNr, previousDelay);
+            assertTrue(delay >= 50, "delay " + delay + " is too short");
+            assertTrue(delay <= Math.min(2000, Math.max(50, previousDelay * 3)),
+                "delay " + delay + " is too long after " + previousDelay);
+            previousDelay = delay;
+        }
+    }
+
+    @Test
+    void noneNeverRetries() {
+        assertEquals(RetryPolicy.GIVE_UP, RetryPolicy.none().delayBeforeRetry(1, 0));
+    }
+
+    @Test
+    void commandsAreClassified() {
+        assertEquals(RetryPolicy.CommandClass.READ,
+            RetryPolicy.CommandClass.of(Arrays.asList("status", "version", "test")));
+        assertEquals(RetryPolicy.CommandClass.WRITE,
+            RetryPolicy.CommandClass.of(Arrays.asList("status", "set=1,on")));
+        assertEquals(RetryPolicy.CommandClass.WRITE,
+            RetryPolicy.CommandClass.of(Collections.singletonList("reset")));
+    }
+
+    @Test
+    void budgetLimitsRetries() {
+        final RetryBudget budget = new RetryBudget(0.5, 1);
+
+        assertTrue(budget.tryRetry());
+        assertFalse(budget.tryRetry());
+
+        budget.recordRequest();
+        assertFalse(budget.tryRetry());
+        budget.recordRequest();
+        assertTrue(budget.tryRetry());
+
+        assertEquals(2, budget.getNumberOfRetries());
+        assertEquals(2, budget.getNumberOfDeniedRetries());
+    }
+
+    @Test
+    void settingsHaveNoBudgetByDefault() {
+        final RetrySettings settings = new RetrySettings();
+
+        assertNull(settings.getBudget());
+        assertEquals(100, settings.nextDelay(RetryPolicy.CommandClass.READ,
+            new JambelIoException("failed"), 1, 0));
+    }
+
+    @Test
+    void settingsWithoutRetriesDontCountRequests() {
+        final RetryBudget budget = new RetryBudget(0.5, 1);
+        final RetrySettings settings = new RetrySettings();
+        settings.setBudget(budget);
+        settings.setNumberOfRetries(0);
+        assertTrue(budget.tryRetry());
+
+        settings.recordRequest();
+        settings.recordRequest();
+        assertFalse(budget.tryRetry());
+
+        settings.setNumberOfRetries(1);
+        settings.recordRequest();
+        settings.recordRequest();
+        assertTrue(budget.tryRetry());
+    }
+}
@@ -0,0 +1,75 @@
+package com.jambit.hlerchl.jambel.link;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RttEstimatorTest {
+
+    @Test
+    void initialTimeoutIsUsedUntilFirstSample() {
+        final RttEstimator estimator = new RttEstimator();
+        estimator.setInitialTimeoutMsec(750);
+
+        assertEquals(-1, estimator.getSmoothedRttMsec());
+        assertEquals(750, estimator.getTimeoutMsec());
+    }
+
+    @Test
+    void timeoutFollowsSmoothedRttAndVariation() {
+        final RttEstimator estimator = new RttEstimator();
+        estimator.setMinTimeoutMsec(1);
+
+        estimator.addSample(msec(100));
+        assertEquals(100, estimator.getSmoothedRttMsec());
+        assertEquals(50, estimator.getRttVariationMsec());
+        assertEquals(300, estimator.getTimeoutMsec());
+
+        estimator.addSample(msec(300));
+        // srtt = 100 + 200 / 8; rttvar = 50 + (200 - 50) / 4
+        assertEquals(125, estimator.getSmoothedRttMsec());
+        assertEquals(87, estimator.getRttVariationMsec());
+        assertEquals(475, estimator.getTimeoutMsec());
+        assertEquals(2, estimator.getNumberOfSamples());
+    }
+
+    @Test
+    void timeoutStaysBetweenFloorAndCeiling() {
+        final RttEstimator estimator = new RttEstimator();
+        estimator.setMinTimeoutMsec(200);
+        estimator.setMaxTimeoutMsec(1000);
+
+        estimator.addSample(msec(5));
+        assertEquals(200, estimator.getTimeoutMsec());
+
+        for (int i = 0; i < 20; ++i) {
+            estimator.addSample(msec(2000));
+        }
+        assertEquals(1000, estimator.getTimeoutMsec());
+    }
+
+    @Test
+    void timeoutsBackOffUntilNextSample() {
+        final RttEstimator estimator = new RttEstimator();
+        estimator.setMinTimeoutMsec(100);
+        estimator.setMaxTimeoutMsec(1000);
+        estimator.addSample(msec(10));
+
+        estimator.recordTimeout();
+        assertEquals(200, estimator.getTimeoutMsec());
+        estimator.recordTimeout();
+        estimator.recordTimeout();
+        estimator.recordTimeout();
+        assertEquals(1000, estimator.getTimeoutMsec());
+        assertEquals(1000, estimator.getRetryDelayMsec());
+
+        estimator.addSample(msec(10));
+        assertEquals(100, estimator.getTimeoutMsec());
+    }
+
+    private static long msec(long milliSeconds) {
+        return TimeUnit.MILLISECONDS.toNanos(milliSeconds);
+    }
+}